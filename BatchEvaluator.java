@@ -0,0 +1,271 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+/**
+ * Scores every column of many positions, for analysis jobs, using the hard ai's search
+ * (see {@link HardAI#scoreColumns}).
+ *
+ * Positions are read from an iterator a chunk at a time, each chunk evaluated across a
+ * fork-join pool, and results handed on in the order the positions were read. No more
+ * than a few chunks are held at once, so memory stays bounded however many positions
+ * there are. Each pool thread has its own ais, the ais of each colour sharing one
+ * transposition table, so positions from the same game warm the table for each other.
+ * A column's score may come from a deeper search found in the table, so scores can
+ * differ a little between runs with different threads or inputs.
+ *
+ * Positions are moves from the empty board with columns numbered from 1, e.g. 4453,
+ * an empty line being the empty board.
+ */
+public class BatchEvaluator {
+    private static final char[] COLOURS = new char[] {'r', 'y'};
+    private static final int CHUNK_SIZE = 1024;
+    private static final int CHUNKS_IN_FLIGHT = 2; //one being written out while the next is evaluated
+    private static final int SPLIT_SIZE = 8; //positions evaluated by one task without splitting
+
+    private final int depth;
+    private final ForkJoinPool pool;
+    private final TranspositionTable[] tables = new TranspositionTable[] {
+        new TranspositionTable(HardAI.TABLE_SIZE_BITS), new TranspositionTable(HardAI.TABLE_SIZE_BITS)
+    };
+
+    //Each pool thread's ais, by colour index, created on first use
+    private final ThreadLocal<HardAI[]> ais = ThreadLocal.withInitial(() -> new HardAI[] {
+        newAI(0), newAI(1)
+    });
+
+    /**
+     * @param depth
+     *      The depth to search each column to
+     * @param threads
+     *      The number of positions to evaluate at once
+     * @throws IllegalArgumentException if the depth is less than 1
+     */
+    public BatchEvaluator(int depth, int threads){
+        if (depth < 1){
+            throw new IllegalArgumentException("depth must be at least 1");
+        }
+        this.depth = depth;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    private HardAI newAI(int colourIndex){
+        HardAI ai = new HardAI(COLOURS[colourIndex], COLOURS[1 - colourIndex], tables[colourIndex]);
+        ai.setVerbose(false);
+        return ai;
+    }
+
+    /**
+     * Evaluates every position, handing on the results in the same order.
+     * @param positions
+     *      The positions to evaluate, read on the calling thread
+     * @param results
+     *      Given each result on the calling thread
+     */
+    public void evaluate(Iterator<String> positions, Consumer<Result> results){
+        Deque<ForkJoinTask<Result[]>> inFlight = new ArrayDeque<>();
+        while (positions.hasNext()){
+            List<String> chunk = new ArrayList<>(CHUNK_SIZE);
+            while (chunk.size() < CHUNK_SIZE && positions.hasNext()){
+                chunk.add(positions.next());
+            }
+            inFlight.add(pool.submit(new EvaluateChunk(chunk)));
+            if (inFlight.size() >= CHUNKS_IN_FLIGHT){
+                emit(inFlight.poll().join(), results);
+            }
+        }
+        while (!inFlight.isEmpty()){
+            emit(inFlight.poll().join(), results);
+        }
+    }
+
+    private void emit(Result[] chunk, Consumer<Result> results){
+        for (Result result : chunk){
+            results.accept(result);
+        }
+        for (TranspositionTable table : tables){
+            table.nextGeneration(); //entries of old chunks are replaced first
+        }
+    }
+
+    public void shutdown(){
+        pool.shutdown();
+    }
+
+    /**
+     * @param position
+     *      Moves from the empty board
+     * @return the scores of the position's columns, or the reason it can't be evaluated
+     */
+    Result evaluate(String position){
+        Gamestate gs = new BitboardGamestate(COLOURS);
+        try {
+            gs.playMoves(position);
+        }
+        catch (IllegalArgumentException e){
+            return new Result(position, null, e.getMessage());
+        }
+        if (gs.isWin(COLOURS[0]) || gs.isWin(COLOURS[1]) || gs.isFull()){
+            return new Result(position, null, "the game is over");
+        }
+        HardAI ai = ais.get()[gs.getColourToPlay() == COLOURS[0] ? 0 : 1];
+        return new Result(position, ai.scoreColumns(gs, Math.min(depth, gs.getEmptyCells())), null);
+    }
+
+    /**
+     * Evaluates a chunk of positions, splitting it between the pool's threads,
+     * each part filling its own range of the chunk's results.
+     */
+    private class EvaluateChunk extends RecursiveTask<Result[]> {
+        private static final long serialVersionUID = 1L;
+        private final List<String> positions;
+        private final Result[] results;
+        private final int from;
+        private final int to;
+
+        EvaluateChunk(List<String> positions){
+            this(positions, new Result[positions.size()], 0, positions.size());
+        }
+
+        private EvaluateChunk(List<String> positions, Result[] results, int from, int to){
+            this.positions = positions;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Result[] compute(){
+            if (to - from <= SPLIT_SIZE){
+                for (int i = from; i < to; i++){
+                    results[i] = evaluate(positions.get(i));
+                }
+            }
+            else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new EvaluateChunk(positions, results, from, middle),
+                    new EvaluateChunk(positions, results, middle, to));
+            }
+            return results;
+        }
+    }
+
+    /**
+     * The scores of a position's columns, for the player to move.
+     */
+    public static class Result {
+        private final String position;
+        private final int[] scores;
+        private final String error;
+
+        Result(String position, int[] scores, String error){
+            this.position = position;
+            this.scores = scores;
+            this.error = error;
+        }
+
+        public String getPosition(){
+            return position;
+        }
+
+        /**
+         * @return the score of each column, by column, {@link HardAI#FULL_COLUMN} for full
+         *         columns, or null if the position couldn't be evaluated
+         */
+        public int[] getScores(){
+            return scores;
+        }
+
+        /**
+         * @return why the position couldn't be evaluated, or null if it was
+         */
+        public String getError(){
+            return error;
+        }
+
+        /**
+         * @return the highest scoring column, or -1 if the position couldn't be evaluated
+         */
+        public int getBestColumn(){
+            int best = -1;
+            for (int column = 0; scores != null && column < scores.length; column++){
+                if (scores[column] != HardAI.FULL_COLUMN && (best < 0 || scores[column] > scores[best])){
+                    best = column;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * @return the position, a tab, then the best column (numbered from 1) and the score
+         *         of each column, - for full columns, or "error" and the reason
+         */
+        @Override
+        public String toString(){
+            StringBuilder line = new StringBuilder(position).append('\t');
+            if (scores == null){
+                return line.append("error ").append(error).toString();
+            }
+            line.append(getBestColumn() + 1);
+            for (int score : scores){
+                line.append(' ').append(score == HardAI.FULL_COLUMN ? "-" : Integer.toString(score));
+            }
+            return line.toString();
+        }
+    }
+
+    /**
+     * Evaluates positions one per line, args (all optional): input file, - for stdin
+     * (default), output file, - for stdout (default), depth (default 7) and threads
+     * (default one per core). Writes a line per position, see {@link Result#toString}.
+     */
+    public static void main(String[] args) throws IOException{
+        String input = args.length >= 1 ? args[0] : "-";
+        String output = args.length >= 2 ? args[1] : "-";
+        int depth = args.length >= 3 ? Integer.parseInt(args[2]) : 7;
+        int threads = args.length >= 4 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        BatchEvaluator evaluator = new BatchEvaluator(depth, threads);
+        long startTime = System.nanoTime();
+        long[] count = new long[1];
+        try (BufferedReader in = input.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(input));
+            Writer out = output.equals("-")
+                ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                : Files.newBufferedWriter(Paths.get(output))){
+            evaluator.evaluate(in.lines().map(String::trim).iterator(), result -> {
+                try {
+                    out.write(result.toString());
+                    out.write('\n');
+                    count[0]++;
+                }
+                catch (IOException e){
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        finally {
+            evaluator.shutdown();
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.err.printf("%d positions at depth %d in %.1f seconds, %.1f positions/s\n",
+            count[0], depth, seconds, count[0] / seconds);
+    }
+}
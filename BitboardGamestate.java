@@ -0,0 +1,413 @@
+/**
+ * Gamestate backed by two 64 bit bitboards, one per player, along with a mask
+ * of every occupied cell. Each column takes seven bits, the bottom six being the
+ * cells of that column (bottom row first) and the seventh a sentinel, so four in a
+ * row can be found with a few shifts and ands instead of scanning the char board.
+ *
+ * The char board of the superclass is still kept up to date so that the ais
+ * and printing can use it unchanged.
+ *
+ * Other board sizes work the same way as long as every column and its sentinel fit
+ * in the 64 bits (see {@link fits}). The static methods are for the standard board,
+ * used by the solver, opening book and tablebase, and the fastest for it.
+ */
+public class BitboardGamestate extends Gamestate {
+    static final int WIDTH = 7;
+    static final int HEIGHT = 6;
+    static final int COLUMN_BITS = HEIGHT + 1; //includes the sentinel bit
+    static final long BOTTOM_MASK = bottomRowMask(WIDTH, COLUMN_BITS);
+    static final long BOARD_MASK = BOTTOM_MASK * ((1L << HEIGHT) - 1);
+    static final long TOP_MASK = BOTTOM_MASK << (HEIGHT - 1);
+
+    //The layout of this board, the same as the constants above on the standard board
+    private final int columnBits;
+    private final long bottomRow;
+    private final long cells; //every cell of the board
+    private final long topRow;
+
+    private long[] boards = new long[2]; //[colourIndex]
+    private long mask; //every occupied cell
+
+    public BitboardGamestate(){
+        this(new char[] {'r', 'y'});
+    }
+
+    /**
+     * @param colours
+     *      The chars used by the two players on the board, in order of play
+     */
+    public BitboardGamestate(char[] colours){
+        this(colours, WIDTH, HEIGHT, Gamestate.STANDARD_CONNECT);
+    }
+
+    /**
+     * @param colours
+     *      The chars used by the two players on the board, in order of play
+     * @param width
+     *      The number of columns
+     * @param height
+     *      The number of rows
+     * @param connect
+     *      The number of counters in a row needed to win
+     * @throws IllegalArgumentException if the board doesn't fit in a long, see {@link fits}
+     */
+    public BitboardGamestate(char[] colours, int width, int height, int connect){
+        super(colours, width, height, connect);
+        if (!fits(width, height)){
+            throw new IllegalArgumentException("A " + width + "x" + height + " board doesn't fit in a long");
+        }
+        columnBits = height + 1;
+        bottomRow = bottomRowMask(width, columnBits);
+        cells = bottomRow * ((1L << height) - 1);
+        topRow = bottomRow << (height - 1);
+    }
+
+    /**
+     * @param other
+     *      The gamestate to copy
+     */
+    protected BitboardGamestate(BitboardGamestate other){
+        super(other);
+        this.columnBits = other.columnBits;
+        this.bottomRow = other.bottomRow;
+        this.cells = other.cells;
+        this.topRow = other.topRow;
+        this.boards = other.boards.clone();
+        this.mask = other.mask;
+    }
+
+    /**
+     * @param width
+     *      The number of columns
+     * @param height
+     *      The number of rows
+     * @return true if every column, with a sentinel bit above it, fits in a long
+     */
+    static boolean fits(int width, int height){
+        return (height + 1) * width <= Long.SIZE;
+    }
+
+    @Override
+    public BitboardGamestate copy(){
+        return new BitboardGamestate(this);
+    }
+
+    /**
+     * Places a given counter in a given column, the new cell being the lowest
+     * empty bit of the column, found by adding the bottom bit to the column mask.
+     * @param column
+     *      the column to place the counter in.
+     * @param colour
+     *      the char to be placed on the board.
+     */
+    @Override
+    public void placeCounter(int column, char colour){
+        super.placeCounter(column, colour);
+        long move = (mask + bottomCell(column)) & columnCells(column);
+        boards[colourIndex(colour)] |= move;
+        mask |= move;
+    }
+
+    /**
+     * the reverse action of {@link placeCounter}, the top counter of the column
+     * is the bit below the lowest empty one.
+     * @param column
+     *      the column to reset the top piece to empty in.
+     */
+    @Override
+    public void unplaceCounter(int column){
+        super.unplaceCounter(column);
+        long top = ((mask & columnCells(column)) + bottomCell(column)) >>> 1;
+        boards[0] &= ~top;
+        boards[1] &= ~top;
+        mask ^= top;
+    }
+
+    /**
+     * @return true if the top cell of every column is occupied, false otherwise
+     */
+    @Override
+    public boolean isFull(){
+        return (mask & topRow) == topRow;
+    }
+
+    /**
+     * @param colour
+     *      The char used for finding four in a row.
+     * @return true if four in a row exists on the board for the given char, false otherwise
+     */
+    @Override
+    public boolean isWin(char colour){
+        if (isStandardSize()){
+            return isAlignment(boards[colourIndex(colour)]);
+        }
+        return isAlignment(boards[colourIndex(colour)], columnBits, getConnect());
+    }
+
+    /**
+     * @param colour
+     *      One of the two counter colours of this gamestate
+     * @return bitmask of the playable columns in which the colour would complete four in a row
+     */
+    @Override
+    public int getWinningColumns(char colour){
+        if (getConnect() != Gamestate.STANDARD_CONNECT){
+            return super.getWinningColumns(colour);
+        }
+        return columnsOf(winningCells(boards[colourIndex(colour)], mask, columnBits, cells) & playable());
+    }
+
+    /**
+     * Finds the moves as {@link nonLosingCells} does, on this board.
+     * @param colour
+     *      The colour to move
+     * @return bitmask of the columns the colour can play without losing next turn
+     */
+    @Override
+    public int getNonLosingColumns(char colour){
+        if (getConnect() != Gamestate.STANDARD_CONNECT){
+            return super.getNonLosingColumns(colour);
+        }
+        long possible = playable();
+        long opponentWin = winningCells(boards[1 - colourIndex(colour)], mask, columnBits, cells);
+        long forced = possible & opponentWin;
+        if (forced != 0){
+            if ((forced & (forced - 1)) != 0){
+                return 0; //more than one winning cell to block
+            }
+            possible = forced;
+        }
+        return columnsOf(possible & ~(opponentWin >>> 1));
+    }
+
+    private long playable(){
+        return (mask + bottomRow) & cells;
+    }
+
+    private long bottomCell(int column){
+        return 1L << (column * columnBits);
+    }
+
+    private long columnCells(int column){
+        return ((1L << getHeight()) - 1) << (column * columnBits);
+    }
+
+    /**
+     * @return bitmask of the columns containing any of the cells, bit c for column c
+     */
+    private int columnsOf(long cells){
+        int columns = 0;
+        for (int col = 0; col < getWidth(); col++){
+            if ((cells & columnCells(col)) != 0){
+                columns |= 1 << col;
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * @return the key of the position in the opening book and tablebase, from the bitboards
+     */
+    @Override
+    public long getPositionKey(){
+        if (!isStandardSize()){
+            return super.getPositionKey(); //which refuses
+        }
+        long current = boards[colourIndex(getColourToPlay())]; //either colour may have moved first
+        return OpeningBook.key(current, mask);
+    }
+
+    /**
+     * Checks each direction by anding the board with itself shifted one step
+     * along that direction, then anding the result with itself shifted two steps.
+     * The sentinel bits stop lines from wrapping between columns.
+     * @param board
+     *      The bitboard of a single player
+     * @return true if the bitboard contains four in a row
+     */
+    static boolean isAlignment(long board){
+        long m = board & (board >>> COLUMN_BITS); //horizontal
+        if ((m & (m >>> (2 * COLUMN_BITS))) != 0){
+            return true;
+        }
+        m = board & (board >>> (COLUMN_BITS - 1)); //diagonal \
+        if ((m & (m >>> (2 * (COLUMN_BITS - 1)))) != 0){
+            return true;
+        }
+        m = board & (board >>> (COLUMN_BITS + 1)); //diagonal /
+        if ((m & (m >>> (2 * (COLUMN_BITS + 1)))) != 0){
+            return true;
+        }
+        m = board & (board >>> 1); //vertical
+        return (m & (m >>> 2)) != 0;
+    }
+
+    /**
+     * {@link isAlignment} for any board fitting in a long and any connect length,
+     * anding the board with itself shifted one step at a time.
+     * @param board
+     *      The bitboard of a single player
+     * @param columnBits
+     *      The bits per column, the height plus the sentinel
+     * @param connect
+     *      The number in a row to find
+     * @return true if the bitboard contains the number in a row
+     */
+    static boolean isAlignment(long board, int columnBits, int connect){
+        return isLine(board, columnBits, connect) //horizontal
+            || isLine(board, columnBits - 1, connect) //diagonal \
+            || isLine(board, columnBits + 1, connect) //diagonal /
+            || isLine(board, 1, connect); //vertical
+    }
+
+    /**
+     * @return true if the bitboard has the number of bits in a row, each the shift apart
+     */
+    private static boolean isLine(long board, int shift, int connect){
+        long m = board;
+        for (int i = 1; i < connect && m != 0; i++){
+            m &= i * shift < Long.SIZE ? board >>> (i * shift) : 0;
+        }
+        return m != 0;
+    }
+
+    /**
+     * Finds every empty cell that would complete four in a row for the given
+     * bitboard, whether or not the cell can be played in yet.
+     * For each direction, looks for three in a row either side of the cell, or
+     * two on one side and one on the other.
+     * @param board
+     *      The bitboard of a single player
+     * @param mask
+     *      The bitboard of every occupied cell
+     * @return a bitboard of the winning cells
+     */
+    static long winningCells(long board, long mask){
+        return winningCells(board, mask, COLUMN_BITS, BOARD_MASK);
+    }
+
+    /**
+     * {@link winningCells} for any board fitting in a long, four in a row to win.
+     * @param columnBits
+     *      The bits per column, the height plus the sentinel
+     * @param cells
+     *      Every cell of the board
+     */
+    private static long winningCells(long board, long mask, int columnBits, long cells){
+        long r = (board << 1) & (board << 2) & (board << 3); //vertical, only possible upwards
+        r |= lineCells(board, columnBits); //horizontal
+        r |= lineCells(board, columnBits - 1); //diagonal \
+        r |= lineCells(board, columnBits + 1); //diagonal /
+        return r & (cells ^ mask);
+    }
+
+    /**
+     * @param board
+     *      The bitboard of a single player
+     * @param shift
+     *      The distance in bits between neighbouring cells of the line direction
+     * @return the cells with three of the board's counters around them along the direction
+     */
+    private static long lineCells(long board, int shift){
+        long p = (board << shift) & (board << (2 * shift));
+        long r = p & (board << (3 * shift));
+        r |= p & (board >>> shift);
+        p = (board >>> shift) & (board >>> (2 * shift));
+        r |= p & (board << shift);
+        r |= p & (board >>> (3 * shift));
+        return r;
+    }
+
+    /**
+     * Removes moves which let the opponent win immediately: playing under one of their
+     * winning cells, or not blocking one they could play next. If they have two cells
+     * to block the player has lost, so there are no non losing moves.
+     * @param current
+     *      The bitboard of the player to move
+     * @param mask
+     *      The bitboard of every occupied cell
+     * @return a bitboard of the cells which can be played without losing next turn
+     */
+    static long nonLosingCells(long current, long mask){
+        long possible = playableCells(mask);
+        long opponentWin = winningCells(current ^ mask, mask);
+        long forced = possible & opponentWin;
+        if (forced != 0){
+            if ((forced & (forced - 1)) != 0){
+                return 0; //more than one winning cell to block
+            }
+            possible = forced;
+        }
+        return possible & ~(opponentWin >>> 1);
+    }
+
+    /**
+     * @param cells
+     *      A bitboard of cells
+     * @return bitmask of the columns containing any of the cells, bit c for column c
+     */
+    static int toColumns(long cells){
+        int columns = 0;
+        for (int col = 0; col < WIDTH; col++){
+            if ((cells & columnMask(col)) != 0){
+                columns |= 1 << col;
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * @param mask
+     *      The bitboard of every occupied cell
+     * @return a bitboard of the lowest empty cell of each non full column
+     */
+    static long playableCells(long mask){
+        return (mask + BOTTOM_MASK) & BOARD_MASK;
+    }
+
+    static long bottomMask(int column){
+        return 1L << (column * COLUMN_BITS);
+    }
+
+    static long columnMask(int column){
+        return ((1L << HEIGHT) - 1) << (column * COLUMN_BITS);
+    }
+
+    /**
+     * @param board
+     *      Any bitboard
+     * @return the bitboard reflected left to right, column 0 swapping with 6
+     */
+    static long mirror(long board){
+        long mirrored = 0;
+        for (int col = 0; col < WIDTH; col++){
+            long column = (board >>> (col * COLUMN_BITS)) & ((1L << COLUMN_BITS) - 1);
+            mirrored |= column << ((WIDTH - 1 - col) * COLUMN_BITS);
+        }
+        return mirrored;
+    }
+
+    private static long bottomRowMask(int width, int columnBits){
+        long bottom = 0;
+        for (int col = 0; col < width; col++){
+            bottom |= 1L << (col * columnBits);
+        }
+        return bottom;
+    }
+
+    /**
+     * @param colour
+     *      One of the two counter colours of this gamestate
+     * @return the bitboard of the given colour
+     */
+    public long getBitboard(char colour){
+        return boards[colourIndex(colour)];
+    }
+
+    /**
+     * @return the bitboard of every occupied cell
+     */
+    public long getMask(){
+        return mask;
+    }
+}
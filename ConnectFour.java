@@ -1,3 +1,7 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Random;
@@ -6,11 +10,21 @@ import java.util.Random;
  * The 'main' class, used to instantiate the player list and gamestate
  * then iterate through until completion.
  * Can be run with two optional args, to designate if the human goes first,
- * and if the ai is easy or hard
+ * and if the ai is easy or hard, then optionally the width, height and number
+ * in a row to win for a board other than the standard 7 by 6, four in a row
+ *
+ * Every game is recorded to the game log in the games directory, see {@link GameLog}.
  */
 public class ConnectFour {
     private Player[] players = new Player[2]; //polymorphism
     private Gamestate gamestate;
+    private static OpeningBook openingBook = loadOpeningBook(Paths.get("opening.book"));
+    private static Tablebase tablebase = loadTablebase(Paths.get("endgame.tablebase"));
+    private static final Path SEARCH_CACHE = Paths.get("search.cache"); //the hard ai's saved transposition table
+    private static final Path GAME_LOG = Paths.get("games");
+    private static GameLog gameLog; //opened for the first game
+    private GameRecord record;
+    private Player firstPlayer;
 
     /**
      * Initiates a game by displaying the intro and setting up the players and gamestate.
@@ -22,11 +36,39 @@ public class ConnectFour {
      *      indicates the difficult of AI to be used, 'h' for hard, 'e' for easy
      */
     public ConnectFour(char[] colours, char humanHasFirstTurn, char difficulty){
-        gamestate = new Gamestate();
+        this(colours, humanHasFirstTurn, difficulty,
+            Gamestate.STANDARD_WIDTH, Gamestate.STANDARD_HEIGHT, Gamestate.STANDARD_CONNECT);
+    }
+
+    /**
+     * Initiates a game on a board of the given size.
+     * @param colours
+     *      The chars to represent the two players on the board within the game
+     * @param humanHasFirstTurn
+     *      indicates who is to play first, 't' if human, 'f' if AI
+     * @param difficulty
+     *      indicates the difficult of AI to be used, 'h' for hard, 'e' for easy
+     * @param width
+     *      The number of columns
+     * @param height
+     *      The number of rows
+     * @param connect
+     *      The number of counters in a row needed to win
+     */
+    public ConnectFour(char[] colours, char humanHasFirstTurn, char difficulty, int width, int height, int connect){
+        gamestate = Gamestate.create(colours, width, height, connect);
+        if (humanHasFirstTurn == 'f'){
+            gamestate.setFirstColour(colours[1]); //the ai's
+        }
         players[0] = new Human(colours[0]); //polymorphism
 
         if (difficulty=='h'){
-            players[1] = new HardAI(colours[1], colours[0]); //polymorphism
+            HardAI ai = new HardAI(colours[1], colours[0]);
+            ai.setOpeningBook(openingBook);
+            ai.setTablebase(tablebase);
+            ai.setPondering(true); //searches while the human thinks
+            loadSearchCache(ai);
+            players[1] = ai; //polymorphism
         }
         else {
             players[1] = new EasyAI(colours[1], colours[0]); //polymorphism 
@@ -34,6 +76,11 @@ public class ConnectFour {
 
         printIntro();
 
+        firstPlayer = humanHasFirstTurn == 'f' ? players[1] : players[0];
+        Player second = firstPlayer == players[0] ? players[1] : players[0];
+        record = new GameRecord(gamestate.getWidth(), gamestate.getHeight(), gamestate.getConnect(),
+            firstPlayer.getName(), second.getName(), System.currentTimeMillis());
+
         //Performs an AI turn to offset the playing of the first turn if the ai is to be first
         if (humanHasFirstTurn=='f'){
             playerTurn(players[1]);
@@ -55,15 +102,34 @@ public class ConnectFour {
                 if(gameOver) {
                     if (gamestate.isWin(p.getColour())){
                         System.out.println(String.format("%s Won!!", p.getName()));
+                        record.setResult(p == firstPlayer ? GameRecord.FIRST_WINS : GameRecord.SECOND_WINS);
                     }
                     else{
                         System.out.println("Board full, thus draw!");
+                        record.setResult(GameRecord.DRAW);
                     }
                     break;
                 }
             }
             gamestate.printBoard();
         } while(!gameOver);
+        logGame();
+    }
+
+    /**
+     * Appends the game's record to the game log, opening the log for the first game.
+     */
+    private void logGame(){
+        try {
+            if (gameLog == null){
+                gameLog = new GameLog(GAME_LOG, 16 << 20, 16);
+            }
+            gameLog.append(record);
+            gameLog.flush(); //the game may be the last, the console game is ended by the user
+        }
+        catch(IOException e){
+            System.out.println("Couldn't record the game: " + e.getMessage());
+        }
     }
 
     /**
@@ -74,17 +140,98 @@ public class ConnectFour {
      * @return true if the game has ended from the players action, false otherwise
      */
     private boolean playerTurn(Player player){
+        long startTime = System.nanoTime();
         int move = player.getInput(gamestate);
+        long micros = (System.nanoTime() - startTime) / 1000;
+        SearchStats stats = player instanceof HardAI ? ((HardAI) player).getLastSearchStats() : null;
+        record.addMove(move, micros, stats != null ? stats.getDepth() : 0, stats != null ? stats.getScore() : 0);
         gamestate.placeCounter(move, player.getColour());
         return gamestate.isWin(player.getColour()) || gamestate.isFull();
     }
 
+    /**
+     * Warm starts the hard ai from the transposition table saved after the last game,
+     * if there is one for the same board and evaluation.
+     */
+    private void loadSearchCache(HardAI ai){
+        if (!Files.exists(SEARCH_CACHE)){
+            return;
+        }
+        try {
+            ai.loadTable(SEARCH_CACHE, gamestate);
+        }
+        catch(IOException | IllegalArgumentException e){
+            System.out.println("Couldn't load the search cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the hard ai's transposition table for the next game, or the next time the game is run.
+     */
+    public void saveSearchCache(){
+        if (!(players[1] instanceof HardAI)){
+            return;
+        }
+        try {
+            ((HardAI) players[1]).saveTable(SEARCH_CACHE);
+        }
+        catch(IOException e){
+            System.out.println("Couldn't save the search cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the ai's pondering thread, for when the game is over.
+     */
+    public void shutdown(){
+        for (Player player : players){
+            player.shutdown();
+        }
+    }
+
+    /**
+     * @param file
+     *      The opening book file, generated by {@link OpeningBook#main}
+     * @return the opening book for the hard ai, or null if there is none
+     */
+    static OpeningBook loadOpeningBook(Path file){
+        if (!Files.exists(file)){
+            return null;
+        }
+        try {
+            return OpeningBook.open(file);
+        }
+        catch(IOException | IllegalArgumentException e){
+            System.out.println("Couldn't load the opening book: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @param file
+     *      The tablebase file, generated by {@link Tablebase#main}
+     * @return the endgame tablebase for the hard ai, or null if there is none
+     */
+    static Tablebase loadTablebase(Path file){
+        if (!Files.exists(file)){
+            return null;
+        }
+        try {
+            return Tablebase.open(file);
+        }
+        catch(IOException | IllegalArgumentException e){
+            System.out.println("Couldn't load the tablebase: " + e.getMessage());
+            return null;
+        }
+    }
+
     private void printIntro(){
         System.out.println("Welcome to Connect 4");
 		System.out.println("There are 2 players Black and White");
 		System.out.println("The first player is assigned randomly");
 		System.out.println("To play the game type in the number of the column you want to drop you counter in");
-		System.out.println("A player wins by connecting 4 counters in a row - vertically, horizontally or diagonally\n");
+		System.out.printf("A player wins by connecting %d counters in a row - vertically, horizontally or diagonally\n\n",
+            gamestate.getConnect());
     }
 
     public static void main(String[] args) {
@@ -102,13 +249,18 @@ public class ConnectFour {
         } else {
             difficulty = 'h';
         }
+        int width = args.length >= 3 ? Integer.parseInt(args[2]) : Gamestate.STANDARD_WIDTH;
+        int height = args.length >= 4 ? Integer.parseInt(args[3]) : Gamestate.STANDARD_HEIGHT;
+        int connect = args.length >= 5 ? Integer.parseInt(args[4]) : Gamestate.STANDARD_CONNECT;
 
         char[] colours = new char[] {'r', 'y'};
         ConnectFour game;
         String response;
         do{
-            game = new ConnectFour(colours, humanHasFirstTurn, difficulty);
+            game = new ConnectFour(colours, humanHasFirstTurn, difficulty, width, height, connect);
             game.playGame();
+            game.saveSearchCache();
+            game.shutdown(); //each game has its own ai
             
             response = IOstatic.getStringInput("Play Again? [y/n]",
                 new ArrayList<String>(Arrays.asList("y", "n")));
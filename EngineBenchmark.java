@@ -0,0 +1,221 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Benchmark suite for the gamestates and the hard ai, for tracking the speed of the
+ * engine between releases.
+ *
+ * Each benchmark is warmed up before being measured, then reports its throughput
+ * in operations per second, with the error across measurement iterations, and the
+ * bytes allocated per operation, read from the thread's allocation counter.
+ * Gamestate benchmarks run over a fixed corpus of opening, middlegame and endgame
+ * positions, each operation being one position.
+ *
+ * Can be run with an optional arg, a regex selecting the benchmarks to run by name.
+ */
+public class EngineBenchmark {
+    private static final char[] COLOURS = new char[] {'r', 'y'};
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 1000000000L;
+
+    //Positions as moves from the empty board, columns numbered from 1
+    static final Map<String, String[]> CORPUS = new LinkedHashMap<>();
+    static {
+        CORPUS.put("opening", new String[] {"", "4", "44", "4453", "3435"});
+        CORPUS.put("middlegame", new String[] {"666331116375", "16547316477117", "44444322"});
+        CORPUS.put("endgame", new String[] {"46745714127452411775147356", "431773471311743624135725734261"});
+    }
+
+    private static long sink; //results are added here so the jit can't remove the work
+
+    public static void main(String[] args){
+        String filter = args.length >= 1 ? args[0] : ".*";
+        List<Benchmark> benchmarks = new ArrayList<>();
+        for (String phase : CORPUS.keySet()){
+            addGamestateBenchmarks(benchmarks, phase, "char", () -> new Gamestate(COLOURS));
+            addGamestateBenchmarks(benchmarks, phase, "bitboard", () -> new BitboardGamestate(COLOURS));
+            addScoreBenchmark(benchmarks, phase);
+        }
+        for (String phase : CORPUS.keySet()){
+            for (int depth = 5; depth <= 9; depth++){
+                addSearchBenchmark(benchmarks, phase, depth);
+            }
+        }
+
+        System.out.printf("%-40s %14s %12s %14s\n", "Benchmark", "ops/s", "error", "bytes/op");
+        for (Benchmark benchmark : benchmarks){
+            if (benchmark.name.matches(filter)){
+                benchmark.run();
+            }
+        }
+        if (sink == 42){
+            System.out.println();
+        }
+    }
+
+    private static void addGamestateBenchmarks(List<Benchmark> benchmarks, String phase, String type,
+            Supplier<Gamestate> representation){
+        Gamestate[] positions = positions(phase, representation);
+        benchmarks.add(new Benchmark("isWin." + type + "." + phase, positions.length, () -> {
+            long result = 0;
+            for (Gamestate gs : positions){
+                result += gs.isWin(COLOURS[0]) || gs.isWin(COLOURS[1]) ? 1 : 0;
+            }
+            return result;
+        }));
+        benchmarks.add(new Benchmark("getPossibleMoves." + type + "." + phase, positions.length, () -> {
+            long result = 0;
+            for (Gamestate gs : positions){
+                result += gs.getPossibleMoves().size();
+            }
+            return result;
+        }));
+        benchmarks.add(new Benchmark("placeUnplace." + type + "." + phase, positions.length, () -> {
+            long result = 0;
+            for (Gamestate gs : positions){
+                for (int column = 0; column < 7; column++){
+                    if (gs.canPlay(column)){
+                        gs.placeCounter(column, gs.getColourToPlay());
+                        gs.unplaceCounter(column);
+                    }
+                }
+                result += gs.getHash();
+            }
+            return result;
+        }));
+    }
+
+    private static void addScoreBenchmark(List<Benchmark> benchmarks, String phase){
+        Gamestate[] positions = positions(phase, () -> new BitboardGamestate(COLOURS));
+        HardAI ai = new HardAI(COLOURS[0], COLOURS[1]);
+        benchmarks.add(new Benchmark("getScore." + phase, positions.length, () -> {
+            long result = 0;
+            for (Gamestate gs : positions){
+                result += ai.getScore(gs, 0);
+            }
+            return result;
+        }));
+    }
+
+    /**
+     * One operation is a full search of one position of the phase to the depth,
+     * starting with an empty transposition table.
+     */
+    private static void addSearchBenchmark(List<Benchmark> benchmarks, String phase, int depth){
+        Gamestate[] positions = positions(phase, () -> new BitboardGamestate(COLOURS));
+        HardAI[] ais = new HardAI[positions.length];
+        for (int i = 0; i < positions.length; i++){
+            char colour = positions[i].getColourToPlay();
+            ais[i] = new HardAI(colour, colour == COLOURS[0] ? COLOURS[1] : COLOURS[0]);
+            ais[i].setSearchDepth(depth);
+            ais[i].setVerbose(false);
+        }
+        int[] next = new int[1];
+        benchmarks.add(new Benchmark("minimax.depth" + depth + "." + phase, 1,
+            () -> ais[next[0] % positions.length].reset(),
+            () -> {
+                int i = next[0]++ % positions.length;
+                return ais[i].getInput(positions[i]);
+            }));
+    }
+
+    /**
+     * @return the positions of the corpus for the phase, in the given representation
+     */
+    private static Gamestate[] positions(String phase, Supplier<Gamestate> representation){
+        String[] moves = CORPUS.get(phase);
+        Gamestate[] positions = new Gamestate[moves.length];
+        for (int i = 0; i < moves.length; i++){
+            positions[i] = representation.get();
+            positions[i].playMoves(moves[i]);
+        }
+        return positions;
+    }
+
+    /**
+     * A named operation, timed by calling it repeatedly for a fixed time per iteration.
+     * Operations with a setup are timed one call at a time, leaving the setup out.
+     */
+    private static class Benchmark {
+        private final String name;
+        private final int opsPerCall;
+        private final Runnable setup;
+        private final LongSupplier call;
+
+        Benchmark(String name, int opsPerCall, LongSupplier call){
+            this(name, opsPerCall, null, call);
+        }
+
+        Benchmark(String name, int opsPerCall, Runnable setup, LongSupplier call){
+            this.name = name;
+            this.opsPerCall = opsPerCall;
+            this.setup = setup;
+            this.call = call;
+        }
+
+        void run(){
+            for (int i = 0; i < WARMUP_ITERATIONS; i++){
+                iteration();
+            }
+            double[] opsPerSecond = new double[MEASUREMENT_ITERATIONS];
+            long ops = 0;
+            long allocated = 0;
+            for (int i = 0; i < MEASUREMENT_ITERATIONS; i++){
+                long allocatedBefore = allocatedBytes();
+                long[] result = iteration();
+                allocated += allocatedBytes() - allocatedBefore;
+                ops += result[0];
+                opsPerSecond[i] = result[0] / (result[1] / 1e9);
+            }
+
+            double mean = 0;
+            for (double value : opsPerSecond){
+                mean += value / MEASUREMENT_ITERATIONS;
+            }
+            double variance = 0;
+            for (double value : opsPerSecond){
+                variance += (value - mean) * (value - mean) / (MEASUREMENT_ITERATIONS - 1);
+            }
+            double error = 2.776 * Math.sqrt(variance / MEASUREMENT_ITERATIONS); //95% confidence, t with 4 degrees of freedom
+            System.out.printf("%-40s %14.1f %12.1f %14.1f\n", name, mean, error, (double) allocated / ops);
+        }
+
+        /**
+         * @return {operations, nanoseconds taken}
+         */
+        private long[] iteration(){
+            long ops = 0;
+            long startTime = System.nanoTime();
+            if (setup == null){
+                long elapsed;
+                do {
+                    sink += call.getAsLong();
+                    ops += opsPerCall;
+                    elapsed = System.nanoTime() - startTime;
+                } while (elapsed < ITERATION_NANOS);
+                return new long[] {ops, elapsed};
+            }
+
+            long timed = 0;
+            do {
+                setup.run();
+                long callStart = System.nanoTime();
+                sink += call.getAsLong();
+                timed += System.nanoTime() - callStart;
+                ops += opsPerCall;
+            } while (System.nanoTime() - startTime < ITERATION_NANOS);
+            return new long[] {ops, timed};
+        }
+    }
+
+    private static long allocatedBytes(){
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
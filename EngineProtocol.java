@@ -0,0 +1,217 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Headless line based protocol for driving the hard ai from another program, similar
+ * to UCI for chess engines, so many positions can be searched by one warm JVM.
+ * Reads commands from stdin and writes replies to stdout, one per line.
+ *
+ * Commands:
+ * position [moves]       set the position, as moves from the empty board with columns
+ *                        numbered from 1, e.g. "position 4453", "position" for the empty board
+ * go depth N             search to depth N
+ * go movetime MS         search for MS milliseconds
+ * go [infinite]          search until stopped
+ * stop                   finish the search, replying with the best move so far
+ * threads N              search with N threads
+ * newgame                forget everything learnt from previous searches
+ * isready                replies "readyok" once any search has finished
+ * quit                   exit, stopping any search
+ *
+ * Replies:
+ * info depth D score S nodes N nps X time MS pv COLUMNS   after each iteration of a search
+ * bestmove C                                              when a search finishes, or "bestmove none"
+ *                                                         if the game is already over
+ * info string MESSAGE                                     for errors
+ *
+ * Searches run on their own thread, so stop can be read while searching. The ai plays
+ * from opening.book when it is in the working directory.
+ */
+public class EngineProtocol {
+    private static final char[] COLOURS = new char[] {'r', 'y'};
+    private static final int MAX_DEPTH = 42;
+
+    private final PrintStream out;
+    private final HardAI[] ais = new HardAI[2]; //one for each colour to move, by colour index
+    private Gamestate gamestate = new BitboardGamestate(COLOURS);
+
+    private final ExecutorService searcher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "EngineProtocol search");
+        t.setDaemon(true);
+        return t;
+    });
+    private Future<?> search; //the running or last search, null if there hasn't been one
+    private AtomicBoolean stop; //stops the running search
+
+    /**
+     * @param out
+     *      The stream to write replies to
+     */
+    public EngineProtocol(PrintStream out){
+        this.out = out;
+        OpeningBook book = ConnectFour.loadOpeningBook(Paths.get("opening.book"));
+        for (int i = 0; i < ais.length; i++){
+            ais[i] = new HardAI(COLOURS[i], COLOURS[1 - i]);
+            ais[i].setVerbose(false);
+            ais[i].setOpeningBook(book);
+            ais[i].addSearchListener(new SearchListener(){
+                @Override
+                public void onIteration(SearchStats stats){
+                    printInfo(stats);
+                }
+
+                @Override
+                public void onSearchComplete(SearchStats stats){
+                }
+            });
+        }
+    }
+
+    /**
+     * Reads and runs commands until quit or the end of the input.
+     * @param input
+     *      The commands
+     * @throws IOException if the input can't be read
+     */
+    public void run(BufferedReader input) throws IOException{
+        String line;
+        while ((line = input.readLine()) != null){
+            if (!execute(line.trim())){
+                break;
+            }
+        }
+        stopSearch();
+        searcher.shutdown();
+    }
+
+    /**
+     * @param line
+     *      A command
+     * @return false if the command was quit, true otherwise
+     */
+    boolean execute(String line){
+        String[] words = line.split("\\s+");
+        try {
+            switch (words[0]){
+                case "position":
+                    stopSearch();
+                    Gamestate position = new BitboardGamestate(COLOURS);
+                    position.playMoves(words.length >= 2 ? words[1] : "");
+                    gamestate = position;
+                    break;
+                case "go":
+                    go(words);
+                    break;
+                case "stop":
+                    stopSearch();
+                    break;
+                case "threads":
+                    stopSearch();
+                    for (HardAI ai : ais){
+                        ai.setThreads(Integer.parseInt(words[1]));
+                    }
+                    break;
+                case "newgame":
+                    stopSearch();
+                    for (HardAI ai : ais){
+                        ai.reset();
+                    }
+                    break;
+                case "isready":
+                    waitForSearch();
+                    out.println("readyok");
+                    break;
+                case "quit":
+                    return false;
+                case "":
+                    break;
+                default:
+                    out.println("info string unknown command " + words[0]);
+            }
+        }
+        catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e){
+            out.println("info string invalid command '" + line + "': " + e.getMessage());
+        }
+        return true;
+    }
+
+    private void go(String[] words){
+        stopSearch();
+        int depth = MAX_DEPTH;
+        long moveTime = 0;
+        if (words.length >= 3 && words[1].equals("depth")){
+            depth = Integer.parseInt(words[2]);
+            if (depth < 1){
+                throw new IllegalArgumentException("depth must be at least 1");
+            }
+        }
+        else if (words.length >= 3 && words[1].equals("movetime")){
+            moveTime = Long.parseLong(words[2]);
+            if (moveTime < 1){
+                throw new IllegalArgumentException("movetime must be at least 1");
+            }
+        }
+        else if (words.length >= 2 && !words[1].equals("infinite")){
+            throw new IllegalArgumentException("expected depth, movetime or infinite");
+        }
+
+        Gamestate gs = gamestate.copy(); //the search has its own copy, positions can be set meanwhile
+        if (gs.isWin(COLOURS[0]) || gs.isWin(COLOURS[1]) || gs.isFull()){
+            out.println("bestmove none");
+            return;
+        }
+        HardAI ai = ais[gs.getColourToPlay() == COLOURS[0] ? 0 : 1];
+        int depthLimit = depth;
+        long timeBudget = moveTime;
+        AtomicBoolean searchStop = new AtomicBoolean();
+        stop = searchStop;
+        search = searcher.submit(() -> {
+            SearchStats stats = ai.searchIteratively(gs, depthLimit, timeBudget, searchStop);
+            out.println("bestmove " + (stats.getBestColumn() + 1));
+        });
+    }
+
+    /**
+     * Stops any running search, waiting for it to reply with its best move.
+     */
+    private void stopSearch(){
+        if (search != null){
+            stop.set(true);
+        }
+        waitForSearch();
+    }
+
+    private void waitForSearch(){
+        if (search == null){
+            return;
+        }
+        try {
+            search.get();
+        }
+        catch (ExecutionException e){
+            out.println("info string search failed: " + e.getCause());
+        }
+        catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        search = null;
+    }
+
+    private void printInfo(SearchStats stats){
+        out.println("info depth " + stats.getDepth() + " score " + stats.getScore()
+            + " nodes " + stats.getNodes() + " nps " + stats.getNodesPerSecond()
+            + " time " + stats.getElapsedNanos() / 1000000 + " pv " + stats.getPrincipalVariationString());
+    }
+
+    public static void main(String[] args) throws IOException{
+        new EngineProtocol(System.out).run(new BufferedReader(new InputStreamReader(System.in)));
+    }
+}
@@ -0,0 +1,325 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Rolling log of {@link GameRecord}s, for analysing and regression testing the ais
+ * over many games.
+ *
+ * Records are appended to numbered files in a directory, games-00000.log,
+ * games-00001.log..., buffered and written through a file channel a buffer at a time.
+ * When a file reaches its size limit the next is started, and the oldest are deleted
+ * once there are too many. Opening a log carries on appending to its newest file,
+ * cutting off any record left unfinished by a crash, unless the file is full or of
+ * another version. Each file starts with an 8 byte header (magic, version)
+ * then the encoded records one after another.
+ *
+ * {@link Reader} streams the records back a buffer at a time, so millions of records
+ * can be replayed without holding them all.
+ */
+public class GameLog implements Closeable {
+    static final int MAGIC = 0x43344752; //"C4GR"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 8;
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final String PREFIX = "games-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+    private FileChannel channel;
+    private int fileNumber;
+    private long fileBytes; //written to the current file, including the buffer
+
+    /**
+     * Opens the log, appending to the newest file in the directory if it has room,
+     * otherwise starting the file after it.
+     * @param directory
+     *      The directory of the log files, created if it doesn't exist
+     * @param maxFileBytes
+     *      The size at which a file is finished and the next started
+     * @param maxFiles
+     *      The most files to keep, the oldest being deleted
+     * @throws IOException if the directory or file can't be opened
+     */
+    public GameLog(Path directory, long maxFileBytes, int maxFiles) throws IOException{
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        Files.createDirectories(directory);
+        List<Path> files = logFiles(directory);
+        long end = -1;
+        if (!files.isEmpty()){
+            Path newest = files.get(files.size() - 1);
+            fileNumber = fileNumber(newest);
+            end = wholeRecordsEnd(newest);
+        }
+        if (end >= HEADER_BYTES && end < maxFileBytes){
+            channel = FileChannel.open(directory.resolve(fileName(fileNumber)), StandardOpenOption.WRITE);
+            channel.truncate(end); //drops a record cut short by a crash
+            channel.position(end);
+            fileBytes = end;
+        }
+        else {
+            fileNumber = files.isEmpty() ? 0 : fileNumber + 1;
+            openFile();
+        }
+    }
+
+    /**
+     * @return the bytes of the file up to the end of its last whole record, or -1 if it
+     *         isn't a log of this version or has a corrupt record, so isn't to be appended to
+     */
+    private static long wholeRecordsEnd(Path file) throws IOException{
+        try (Reader reader = new Reader(file)){
+            while (reader.next() != null){
+                //skip to the end
+            }
+            return reader.getPosition();
+        }
+        catch (IllegalArgumentException e){
+            return -1;
+        }
+    }
+
+    /**
+     * Adds a record to the log, written once the buffer fills or the log is flushed.
+     * @param record
+     *      The finished game
+     * @throws IOException if the log can't be written
+     */
+    public synchronized void append(GameRecord record) throws IOException{
+        int size = record.encodedSize();
+        if (fileBytes > HEADER_BYTES && fileBytes + size > maxFileBytes){
+            roll();
+        }
+        if (size > buffer.remaining()){
+            writeBuffer();
+        }
+        if (size > buffer.capacity()){
+            ByteBuffer large = ByteBuffer.allocate(size);
+            record.encode(large);
+            large.flip();
+            write(large);
+        }
+        else {
+            record.encode(buffer);
+        }
+        fileBytes += size;
+    }
+
+    /**
+     * Writes the buffered records to the file.
+     * @throws IOException if the log can't be written
+     */
+    public synchronized void flush() throws IOException{
+        writeBuffer();
+    }
+
+    @Override
+    public synchronized void close() throws IOException{
+        writeBuffer();
+        channel.close();
+    }
+
+    /**
+     * Starts the file of the current number, deleting the oldest files beyond the most to keep.
+     */
+    private void openFile() throws IOException{
+        Path file = directory.resolve(fileName(fileNumber));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        buffer.putInt(MAGIC).putInt(VERSION);
+        fileBytes = HEADER_BYTES;
+        List<Path> files = logFiles(directory);
+        for (int i = 0; i < files.size() - maxFiles; i++){
+            Files.delete(files.get(i));
+        }
+    }
+
+    /**
+     * Finishes the current file and starts the next.
+     */
+    private void roll() throws IOException{
+        writeBuffer();
+        channel.close();
+        fileNumber++;
+        openFile();
+    }
+
+    private void writeBuffer() throws IOException{
+        buffer.flip();
+        write(buffer);
+        buffer.clear();
+    }
+
+    private void write(ByteBuffer bytes) throws IOException{
+        while (bytes.hasRemaining()){
+            channel.write(bytes);
+        }
+    }
+
+    /**
+     * @param directory
+     *      The directory of a log
+     * @return the log's files, oldest first
+     * @throws IOException if the directory can't be listed
+     */
+    public static List<Path> logFiles(Path directory) throws IOException{
+        try (Stream<Path> files = Files.list(directory)){
+            return files.filter(file -> file.getFileName().toString().matches(PREFIX + "\\d+" + SUFFIX))
+                .sorted((a, b) -> Integer.compare(fileNumber(a), fileNumber(b)))
+                .collect(Collectors.toList());
+        }
+    }
+
+    private static String fileName(int fileNumber){
+        return String.format("%s%05d%s", PREFIX, fileNumber, SUFFIX);
+    }
+
+    private static int fileNumber(Path file){
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * Streams every record of a log, oldest first.
+     * @param directory
+     *      The directory of the log
+     * @param action
+     *      Given each record in turn
+     * @return the number of records
+     * @throws IOException if a file can't be read
+     */
+    public static long replay(Path directory, Consumer<GameRecord> action) throws IOException{
+        long count = 0;
+        for (Path file : logFiles(directory)){
+            try (Reader reader = new Reader(file)){
+                for (GameRecord record = reader.next(); record != null; record = reader.next()){
+                    action.accept(record);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads the records of one log file in order, a buffer at a time.
+     */
+    public static class Reader implements Closeable {
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        private boolean endOfFile;
+
+        /**
+         * @param file
+         *      A file of a {@link GameLog}
+         * @throws IOException if the file can't be read
+         * @throws IllegalArgumentException if the file isn't a game log of this version
+         */
+        public Reader(Path file) throws IOException{
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            buffer.flip(); //empty, ready to be read from
+            if (!fill(HEADER_BYTES) || buffer.getInt() != MAGIC || buffer.getInt() != VERSION){
+                channel.close();
+                throw new IllegalArgumentException("Not a game log, or one of a different version: " + file);
+            }
+        }
+
+        /**
+         * @return the next record, or null at the end of the file, or of its last whole record
+         *         if it was cut short
+         * @throws IOException if the file can't be read
+         */
+        public GameRecord next() throws IOException{
+            if (!fill(Integer.BYTES)){
+                return null;
+            }
+            int length = buffer.getInt(buffer.position());
+            if (!fill(Integer.BYTES + length)){
+                return null;
+            }
+            return GameRecord.decode(buffer);
+        }
+
+        /**
+         * @return the bytes of the file read, up to the end of the last record returned
+         * @throws IOException if the file can't be read
+         */
+        public long getPosition() throws IOException{
+            return channel.position() - buffer.remaining();
+        }
+
+        /**
+         * Reads from the file until the buffer holds the bytes, growing it for a long record.
+         * @return false if the file ends first
+         */
+        private boolean fill(int bytes) throws IOException{
+            if (buffer.remaining() >= bytes){
+                return true;
+            }
+            if (bytes > buffer.capacity()){
+                ByteBuffer larger = ByteBuffer.allocateDirect(bytes);
+                larger.put(buffer);
+                buffer = larger;
+            }
+            else {
+                buffer.compact();
+            }
+            while (buffer.position() < bytes && !endOfFile){
+                endOfFile = channel.read(buffer) < 0;
+            }
+            buffer.flip();
+            return buffer.remaining() >= bytes;
+        }
+
+        @Override
+        public void close() throws IOException{
+            channel.close();
+        }
+    }
+
+    /**
+     * Summarises a log, args: its directory. Prints the games, moves and results by
+     * pairing of players, and how fast the records were read.
+     */
+    public static void main(String[] args) throws IOException{
+        if (args.length < 1){
+            System.out.println("Usage: GameLog <log directory>");
+            return;
+        }
+        Map<String, long[]> pairings = new HashMap<>(); //first wins, second wins, draws, unfinished
+        long[] moves = new long[1];
+        long startTime = System.nanoTime();
+        long games = replay(Paths.get(args[0]), record -> {
+            pairings.computeIfAbsent(record.getPlayer(0) + " vs " + record.getPlayer(1), key -> new long[4])
+                [record.getResult()]++;
+            moves[0] += record.getMoveCount();
+        });
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        List<String> names = new ArrayList<>(pairings.keySet());
+        names.sort(null);
+        for (String name : names){
+            long[] results = pairings.get(name);
+            System.out.printf("%s: %d-%d-%d (first wins, second wins, draws), %d unfinished\n",
+                name, results[0], results[1], results[2], results[3]);
+        }
+        System.out.printf("%d games, %.1f moves per game, read in %.3fs, %.0f games/s\n",
+            games, games > 0 ? (double) moves[0] / games : 0.0, seconds, games / seconds);
+    }
+}
@@ -0,0 +1,355 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The record of one game: the board, the players, the moves and how each was chosen,
+ * and the result, with a compact binary encoding for {@link GameLog}.
+ *
+ * A record is encoded as its length in bytes (not counting the length itself), the
+ * width, height, connect length and result (a byte each), the start time in epoch
+ * milliseconds, the two player names (a short length then UTF-8), the number of moves
+ * (a short), the columns packed {@link bitsPerMove} bits each, 3 on the standard board,
+ * then for each move the time taken in microseconds as a varint, the depth searched
+ * (a byte, 0 if the move wasn't searched, deeper searches recorded as 255) and, if it was searched, the score as a
+ * zigzag varint.
+ */
+public class GameRecord {
+    public static final int FIRST_WINS = 0;
+    public static final int SECOND_WINS = 1;
+    public static final int DRAW = 2;
+    public static final int UNFINISHED = 3;
+    static final int MAX_DEPTH = 0xFF; //the depth is written as a byte
+
+    private final int width;
+    private final int height;
+    private final int connect;
+    private final String[] players; //in order of play
+    private final long startMillis;
+    private int result = UNFINISHED;
+
+    private int moveCount;
+    private int[] columns = new int[16];
+    private long[] micros = new long[16];
+    private int[] depths = new int[16];
+    private int[] scores = new int[16];
+
+    /**
+     * @param width
+     *      The number of columns of the board
+     * @param height
+     *      The number of rows of the board
+     * @param connect
+     *      The number of counters in a row needed to win
+     * @param first
+     *      The name of the player moving first
+     * @param second
+     *      The name of the player moving second
+     * @param startMillis
+     *      When the game started, {@link System#currentTimeMillis}
+     */
+    public GameRecord(int width, int height, int connect, String first, String second, long startMillis){
+        this.width = width;
+        this.height = height;
+        this.connect = connect;
+        this.players = new String[] {first, second};
+        this.startMillis = startMillis;
+    }
+
+    /**
+     * @param width
+     *      The number of columns of the board
+     * @return the bits needed for a column, 3 for up to 8 columns, 4 for up to 16
+     */
+    public static int bitsPerMove(int width){
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(width - 1));
+    }
+
+    /**
+     * @param column
+     *      The column played
+     * @param micros
+     *      The time the player took to choose the move, in microseconds
+     * @param depth
+     *      The depth searched, or 0 if the move wasn't found by a search, recorded as
+     *      at most {@link MAX_DEPTH}
+     * @param score
+     *      The score the search gave the move, for the player moving, ignored if the depth is 0
+     * @throws IllegalArgumentException if the column isn't on the board, or the time or depth is negative
+     */
+    public void addMove(int column, long micros, int depth, int score){
+        if (column < 0 || column >= width || micros < 0 || depth < 0){
+            throw new IllegalArgumentException("Invalid move " + column + ", " + micros + "us, depth " + depth);
+        }
+        depth = Math.min(depth, MAX_DEPTH);
+        if (moveCount == columns.length){
+            columns = Arrays.copyOf(columns, moveCount * 2);
+            this.micros = Arrays.copyOf(this.micros, moveCount * 2);
+            depths = Arrays.copyOf(depths, moveCount * 2);
+            scores = Arrays.copyOf(scores, moveCount * 2);
+        }
+        columns[moveCount] = column;
+        this.micros[moveCount] = micros;
+        depths[moveCount] = depth;
+        scores[moveCount] = depth > 0 ? score : 0;
+        moveCount++;
+    }
+
+    /**
+     * @param result
+     *      One of {@link FIRST_WINS}, {@link SECOND_WINS}, {@link DRAW} or {@link UNFINISHED}
+     */
+    public void setResult(int result){
+        this.result = result;
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+
+    public int getConnect(){
+        return connect;
+    }
+
+    /**
+     * @param index
+     *      0 for the player moving first, 1 for the second
+     * @return the player's name
+     */
+    public String getPlayer(int index){
+        return players[index];
+    }
+
+    public long getStartMillis(){
+        return startMillis;
+    }
+
+    public int getResult(){
+        return result;
+    }
+
+    public int getMoveCount(){
+        return moveCount;
+    }
+
+    /**
+     * @param move
+     *      The index of the move, 0 for the first
+     * @return the column played
+     */
+    public int getColumn(int move){
+        return columns[move];
+    }
+
+    /**
+     * @param move
+     *      The index of the move, 0 for the first
+     * @return the time taken to choose the move, in microseconds
+     */
+    public long getMicros(int move){
+        return micros[move];
+    }
+
+    /**
+     * @param move
+     *      The index of the move, 0 for the first
+     * @return the depth searched, 0 if the move wasn't searched
+     */
+    public int getDepth(int move){
+        return depths[move];
+    }
+
+    /**
+     * @param move
+     *      The index of the move, 0 for the first
+     * @return the score of the move for the player moving, 0 if it wasn't searched
+     */
+    public int getScore(int move){
+        return scores[move];
+    }
+
+    /**
+     * @return the moves in the form of {@link Gamestate#playMoves}, e.g. "4453"
+     */
+    public String getMoves(){
+        StringBuilder moves = new StringBuilder(moveCount);
+        for (int i = 0; i < moveCount; i++){
+            moves.append(Character.forDigit(columns[i] + 1, Character.MAX_RADIX));
+        }
+        return moves.toString();
+    }
+
+    /**
+     * @param colours
+     *      The chars used by the two players on the board, in order of play
+     * @return the gamestate after the moves of the game
+     */
+    public Gamestate replay(char[] colours){
+        Gamestate gs = Gamestate.create(colours, width, height, connect);
+        gs.playMoves(getMoves());
+        return gs;
+    }
+
+    /**
+     * @return the bytes {@link encode} writes
+     */
+    public int encodedSize(){
+        int size = Integer.BYTES + 4 + Long.BYTES + Short.BYTES;
+        for (String player : players){
+            size += Short.BYTES + player.getBytes(StandardCharsets.UTF_8).length;
+        }
+        size += (moveCount * bitsPerMove(width) + 7) / 8;
+        for (int i = 0; i < moveCount; i++){
+            size += varintSize(micros[i]) + 1;
+            if (depths[i] > 0){
+                size += varintSize(zigzag(scores[i]));
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @param buffer
+     *      The buffer to write the record to, with at least {@link encodedSize} bytes remaining
+     */
+    public void encode(ByteBuffer buffer){
+        int start = buffer.position();
+        buffer.putInt(0); //the length, filled in at the end
+        buffer.put((byte) width).put((byte) height).put((byte) connect).put((byte) result);
+        buffer.putLong(startMillis);
+        for (String player : players){
+            byte[] name = player.getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) name.length).put(name);
+        }
+        buffer.putShort((short) moveCount);
+        int bits = bitsPerMove(width);
+        int pending = 0; //bits not yet written, lowest first
+        int pendingBits = 0;
+        for (int i = 0; i < moveCount; i++){
+            pending |= columns[i] << pendingBits;
+            pendingBits += bits;
+            while (pendingBits >= 8){
+                buffer.put((byte) pending);
+                pending >>>= 8;
+                pendingBits -= 8;
+            }
+        }
+        if (pendingBits > 0){
+            buffer.put((byte) pending);
+        }
+        for (int i = 0; i < moveCount; i++){
+            putVarint(buffer, micros[i]);
+            buffer.put((byte) depths[i]);
+            if (depths[i] > 0){
+                putVarint(buffer, zigzag(scores[i]));
+            }
+        }
+        buffer.putInt(start, buffer.position() - start - Integer.BYTES);
+    }
+
+    /**
+     * @param buffer
+     *      A buffer positioned at a record written by {@link encode}, left after it
+     * @return the record
+     * @throws IllegalArgumentException if the record is corrupt
+     */
+    public static GameRecord decode(ByteBuffer buffer){
+        int length = buffer.getInt();
+        int end = buffer.position() + length;
+        int width = buffer.get();
+        int height = buffer.get();
+        int connect = buffer.get();
+        int result = buffer.get();
+        long startMillis = buffer.getLong();
+        String first = getString(buffer);
+        String second = getString(buffer);
+        GameRecord record = new GameRecord(width, height, connect, first, second, startMillis);
+        record.result = result;
+
+        int moveCount = buffer.getShort() & 0xFFFF;
+        int bits = bitsPerMove(width);
+        int[] columns = new int[moveCount];
+        int pending = 0;
+        int pendingBits = 0;
+        for (int i = 0; i < moveCount; i++){
+            while (pendingBits < bits){
+                pending |= (buffer.get() & 0xFF) << pendingBits;
+                pendingBits += 8;
+            }
+            columns[i] = pending & ((1 << bits) - 1);
+            pending >>>= bits;
+            pendingBits -= bits;
+        }
+        for (int i = 0; i < moveCount; i++){
+            long micros = getVarint(buffer);
+            int depth = buffer.get() & 0xFF;
+            int score = depth > 0 ? unzigzag(getVarint(buffer)) : 0;
+            record.addMove(columns[i], micros, depth, score);
+        }
+        if (buffer.position() != end || width < 1 || width > Gamestate.MAX_WIDTH){
+            throw new IllegalArgumentException("Corrupt game record");
+        }
+        return record;
+    }
+
+    private static String getString(ByteBuffer buffer){
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes 7 bits at a time, lowest first, the top bit of each byte set if more follow.
+     */
+    private static void putVarint(ByteBuffer buffer, long value){
+        while ((value & ~0x7FL) != 0){
+            buffer.put((byte) (value | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarint(ByteBuffer buffer){
+        long value = 0;
+        for (int shift = 0; ; shift += 7){
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0){
+                return value;
+            }
+        }
+    }
+
+    private static int varintSize(long value){
+        int size = 1;
+        while ((value & ~0x7FL) != 0){
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * @return the score with the sign in the lowest bit, so small negative scores stay small
+     */
+    private static long zigzag(int score){
+        return ((score << 1) ^ (score >> 31)) & 0xFFFFFFFFL;
+    }
+
+    private static int unzigzag(long value){
+        return (int) (value >>> 1) ^ -(int) (value & 1);
+    }
+
+    /**
+     * @return the players, result and moves, e.g. "Hard AI vs You, first wins: 4453..."
+     */
+    @Override
+    public String toString(){
+        String[] results = new String[] {"first wins", "second wins", "draw", "unfinished"};
+        return players[0] + " vs " + players[1] + ", " + results[result] + ": " + getMoves();
+    }
+}
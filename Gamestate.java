@@ -1,21 +1,79 @@
 import java.util.List;
+import java.util.Random;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 /**
  * Wholly contianed gamestate class, contains all rules and peramaters pertaining to the state of play
+ *
+ * The board is 7 columns by 6 rows with four in a row to win unless other dimensions
+ * are given, for variants such as 8x7 or 9x7. {@link create} picks the fastest
+ * representation for the dimensions.
  */
 public class Gamestate {
-    private int[] pointers = new int[7]; //To represent the next playable row for each respective column
-    private char[][] board = new char[7][6]; //[col][row]
-    private int numColumns = board.length;
-    private int numRows = board[0].length;
+    public static final int STANDARD_WIDTH = 7;
+    public static final int STANDARD_HEIGHT = 6;
+    public static final int STANDARD_CONNECT = 4;
+    public static final int MAX_WIDTH = 16; //columns are given as bits of an int
+    public static final int MAX_HEIGHT = 16;
+
+    private int[] pointers; //To represent the next playable row for each respective column
+    private char[][] board; //[col][row]
+    private int numColumns;
+    private int numRows;
+    private int connect; //the number of counters in a row needed to win
+    private char[] colours; //The two counter colours
+    private char firstColour; //the colour moving first, the first colour unless set
+    private int counters; //the number of counters on the board
+    private long hash; //Zobrist hash of the current board
+    private long mirroredHash; //Zobrist hash of the board reflected left to right
+    private Evaluator evaluator; //heuristic score, updated as counters are (un)placed
+
+    //Random keys for each colour in each cell, xored in and out of the hash as counters are (un)placed
+    private static final long[][] ZOBRIST = zobristKeys(MAX_WIDTH * MAX_HEIGHT); //[colourIndex][col*numRows + row]
 
     /**
-     * Initialises the board to be all empty space and the pointers to be starting at 6
-     * indicating the bottom of each column 
+     * Initialises a gamestate using the default counter colours of {@link ConnectFour}
      */
     public Gamestate(){
+        this(new char[] {'r', 'y'});
+    }
+
+    /**
+     * Initialises a standard 7 by 6 board.
+     * @param colours
+     *      The chars used by the two players on the board, in order of play
+     */
+    public Gamestate(char[] colours){
+        this(colours, STANDARD_WIDTH, STANDARD_HEIGHT, STANDARD_CONNECT);
+    }
+
+    /**
+     * Initialises the board to be all empty space and the pointers to be starting at
+     * the bottom of each column 
+     * @param colours
+     *      The chars used by the two players on the board, in order of play
+     * @param width
+     *      The number of columns, up to {@link MAX_WIDTH}
+     * @param height
+     *      The number of rows, up to {@link MAX_HEIGHT}
+     * @param connect
+     *      The number of counters in a row needed to win
+     * @throws IllegalArgumentException if the dimensions are out of range
+     */
+    public Gamestate(char[] colours, int width, int height, int connect){
+        if (width < 1 || width > MAX_WIDTH || height < 1 || height > MAX_HEIGHT
+                || connect < 2 || connect > Math.max(width, height)){
+            throw new IllegalArgumentException("Invalid board of " + width + "x" + height + ", connect " + connect);
+        }
+        this.colours = colours;
+        this.firstColour = colours[0];
+        this.numColumns = width;
+        this.numRows = height;
+        this.connect = connect;
+        this.pointers = new int[width];
+        this.board = new char[width][height];
+        this.evaluator = new Evaluator(width, height, connect);
         for(int col = 0; col < numColumns; col++){
             pointers[col] = numRows - 1;
             for(int row = 0; row < numRows; row++){
@@ -24,6 +82,83 @@ public class Gamestate {
         }
     }
 
+    /**
+     * Copies another gamestate, so it can be searched independently of the original.
+     * @param other
+     *      The gamestate to copy
+     */
+    protected Gamestate(Gamestate other){
+        this.colours = other.colours;
+        this.firstColour = other.firstColour;
+        this.counters = other.counters;
+        this.numColumns = other.numColumns;
+        this.numRows = other.numRows;
+        this.connect = other.connect;
+        this.board = new char[numColumns][];
+        this.hash = other.hash;
+        this.mirroredHash = other.mirroredHash;
+        this.evaluator = new Evaluator(other.evaluator);
+        this.pointers = other.pointers.clone();
+        for (int col = 0; col < numColumns; col++){
+            this.board[col] = other.board[col].clone();
+        }
+    }
+
+    /**
+     * Creates a gamestate for the dimensions, backed by a single bitboard per player when
+     * the board fits in a long (see {@link BitboardGamestate}), otherwise by a word per
+     * column (see {@link MultiwordGamestate}).
+     * @param colours
+     *      The chars used by the two players on the board, in order of play
+     * @param width
+     *      The number of columns
+     * @param height
+     *      The number of rows
+     * @param connect
+     *      The number of counters in a row needed to win
+     * @return an empty gamestate
+     * @throws IllegalArgumentException if the dimensions are out of range
+     */
+    public static Gamestate create(char[] colours, int width, int height, int connect){
+        if (BitboardGamestate.fits(width, height)){
+            return new BitboardGamestate(colours, width, height, connect);
+        }
+        return new MultiwordGamestate(colours, width, height, connect);
+    }
+
+    /**
+     * @return an independent copy of this gamestate
+     */
+    public Gamestate copy(){
+        return new Gamestate(this);
+    }
+
+    /**
+     * Plays a sequence of moves, alternating colours starting with the player to move.
+     * @param moves
+     *      The columns to play in, as digits from 1, e.g. "4453", then letters from a
+     *      for columns 10 onwards on wider boards
+     * @throws IllegalArgumentException if a move is not a column or the column is full
+     */
+    public void playMoves(String moves){
+        for (char c : moves.toCharArray()){
+            int column = Character.digit(c, Character.MAX_RADIX) - 1;
+            if (column < 0 || column >= numColumns || pointers[column] < 0){
+                throw new IllegalArgumentException("Invalid move '" + c + "' in " + moves);
+            }
+            placeCounter(column, getColourToPlay());
+        }
+    }
+
+    /**
+     * Assumes the players have taken turns, starting with the colour moving first,
+     * see {@link setFirstColour}.
+     * @return the colour of the player whose turn it is
+     */
+    public char getColourToPlay(){
+        return counters % 2 == 0 ? firstColour : colours[1 - colourIndex(firstColour)];
+    }
+
     /**
      * Places a given counter (char) in a given column, 
      * and updates the pointer for that respective column.
@@ -33,7 +168,11 @@ public class Gamestate {
      *      the char to be placed on the board.
      */
     public void placeCounter(int column, char colour){
+        counters++;
         board[column][pointers[column]] = colour;
+        hash ^= ZOBRIST[colourIndex(colour)][column * numRows + pointers[column]];
+        mirroredHash ^= ZOBRIST[colourIndex(colour)][(numColumns - 1 - column) * numRows + pointers[column]];
+        evaluator.place(column, pointers[column], colourIndex(colour));
         pointers[column]--;
     }
 
@@ -43,7 +182,12 @@ public class Gamestate {
      *      the column to reset the top piece to empty in.
      */
     public void unplaceCounter(int column){
+        counters--;
         pointers[column]++;
+        int colourIndex = colourIndex(board[column][pointers[column]]);
+        hash ^= ZOBRIST[colourIndex][column * numRows + pointers[column]];
+        mirroredHash ^= ZOBRIST[colourIndex][(numColumns - 1 - column) * numRows + pointers[column]];
+        evaluator.unplace(column, pointers[column], colourIndex);
         board[column][pointers[column]] = ' ';
     }
 
@@ -51,17 +195,49 @@ public class Gamestate {
      * @return true if there are no remaining possible columns to play, false otherwise
      */
     public boolean isFull(){
-        if (getPossibleColumns().size()==0){
-            return true;
+        for (int col = 0; col < numColumns; col++){
+            if (canPlay(col)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param column
+     *      The column to play in
+     * @return the row the next counter in the column will land in, 0 being the top
+     */
+    public int getNextRow(int column){
+        return pointers[column];
+    }
+
+    /**
+     * @param column
+     *      The column to check
+     * @return true if the column isn't full, false otherwise
+     */
+    public boolean canPlay(int column){
+        return pointers[column] >= 0;
+    }
+
+    /**
+     * @return the number of cells on the board still to be played in
+     */
+    public int getEmptyCells(){
+        int empty = 0;
+        for (int col = 0; col < numColumns; col++){
+            empty += pointers[col] + 1;
         }
-        return false;
+        return empty;
     }
 
     /**
      * Used to check if a given colour has won the game. 
      * @param colour
      *      The char used for finding four in a row.
-     * @return true if four in a row exists on the board for the given char, false otherwise
+     * @return true if four (or the board's connect length) in a row exists on the board
+     *         for the given char, false otherwise
      */
     public boolean isWin(char colour){
         return  isVerticleWin(colour) || isHorizontalWin(colour) || isDiaganolWin(colour);
@@ -74,12 +250,8 @@ public class Gamestate {
      */
     private boolean isVerticleWin(char colour){
         return IntStream.range(0, numColumns)
-            .anyMatch(col -> IntStream.range(0, numRows - 3)
-                            .anyMatch(row -> 
-                                board[col][row]==colour &&
-                                board[col][row+1]==colour &&
-                                board[col][row+2]==colour &&
-                                board[col][row+3]==colour));
+            .anyMatch(col -> IntStream.range(0, numRows - connect + 1)
+                            .anyMatch(row -> isLine(colour, col, row, 0, 1)));
     }
 
     /**
@@ -88,13 +260,9 @@ public class Gamestate {
      * @return true if four in a row exists horizontally on the board for the given char, false otherwise
      */
     private boolean isHorizontalWin(char colour){
-        return IntStream.range(0, numColumns - 3)
+        return IntStream.range(0, numColumns - connect + 1)
             .anyMatch(col -> IntStream.range(0, numRows)
-                            .anyMatch(row -> 
-                                board[col][row]==colour &&
-                                board[col+1][row]==colour &&
-                                board[col+2][row]==colour &&
-                                board[col+3][row]==colour));
+                            .anyMatch(row -> isLine(colour, col, row, 1, 0)));
     }
 
     /**
@@ -103,18 +271,24 @@ public class Gamestate {
      * @return true if four in a row exists diagonally on the board for the given char, false otherwise
      */
     private boolean isDiaganolWin(char colour){
-        return IntStream.range(0, numColumns - 3)
-            .anyMatch(col -> IntStream.range(0, numRows - 3)
+        return IntStream.range(0, numColumns - connect + 1)
+            .anyMatch(col -> IntStream.range(0, numRows - connect + 1)
                             .anyMatch(row -> 
-                                ((board[col][row+3]==colour &&
-                                board[col+1][row+2]==colour &&
-                                board[col+2][row+1]==colour &&
-                                board[col+3][row]==colour)
+                                isLine(colour, col, row + connect - 1, 1, -1)
                                 ||
-                                (board[col][row]==colour &&
-                                board[col+1][row+1]==colour &&
-                                board[col+2][row+2]==colour &&
-                                board[col+3][row+3]==colour))));
+                                isLine(colour, col, row, 1, 1)));
+    }
+
+    /**
+     * @return true if the connect length of cells from the cell along the step are all the colour
+     */
+    private boolean isLine(char colour, int col, int row, int colStep, int rowStep){
+        for (int i = 0; i < connect; i++){
+            if (board[col + i * colStep][row + i * rowStep] != colour){
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -127,7 +301,57 @@ public class Gamestate {
             }
             System.out.println("|");
         }
-        System.out.println("  1   2   3   4   5   6   7");
+        StringBuilder labels = new StringBuilder();
+        for (int col = 0; col < numColumns; col++){
+            labels.append(String.format("%3d ", col + 1));
+        }
+        System.out.println(labels.toString().stripTrailing());
+    }
+
+    /**
+     * Columns are given as bitmasks, bit c set for column c, so they can be
+     * combined and tested without allocating.
+     * Threat queries are for gamestates neither player has won yet.
+     * @param colour
+     *      One of the two counter colours of this gamestate
+     * @return the playable columns in which the colour would complete four in a row
+     */
+    public int getWinningColumns(char colour){
+        int columns = 0;
+        for (int col = 0; col < numColumns; col++){
+            if (canPlay(col)){
+                placeCounter(col, colour);
+                if (isWin(colour)){
+                    columns |= 1 << col;
+                }
+                unplaceCounter(col);
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * The moves which don't let the opponent complete four in a row with their next
+     * counter: blocking the opponent's winning cell if they have one, and not playing
+     * directly beneath one. Empty if the opponent has two winning cells to block.
+     * Doesn't consider the colour winning with the move itself, see {@link getWinningColumns}.
+     * @param colour
+     *      The colour to move
+     * @return bitmask of the columns the colour can play without losing next turn
+     */
+    public int getNonLosingColumns(char colour){
+        char opponent = colours[1 - colourIndex(colour)];
+        int columns = 0;
+        for (int col = 0; col < numColumns; col++){
+            if (canPlay(col)){
+                placeCounter(col, colour);
+                if (getWinningColumns(opponent) == 0){
+                    columns |= 1 << col;
+                }
+                unplaceCounter(col);
+            }
+        }
+        return columns;
     }
 
     /**
@@ -153,4 +377,143 @@ public class Gamestate {
     public char[][] getBoard() {
         return board;
     }
+
+    public int getWidth() {
+        return numColumns;
+    }
+
+    public int getHeight() {
+        return numRows;
+    }
+
+    /**
+     * @return the number of counters in a row needed to win
+     */
+    public int getConnect() {
+        return connect;
+    }
+
+    /**
+     * The solver, opening book and tablebase only cover the standard board.
+     * @return true if the board is the standard 7 by 6, four in a row to win
+     */
+    public boolean isStandardSize() {
+        return numColumns == STANDARD_WIDTH && numRows == STANDARD_HEIGHT && connect == STANDARD_CONNECT;
+    }
+
+    /**
+     * @param firstColour
+     *      The colour moving first, the first of the colours unless set, so that
+     *      the other can move first
+     * @throws IllegalArgumentException if it isn't one of the two colours
+     */
+    public void setFirstColour(char firstColour){
+        if (firstColour != colours[0] && firstColour != colours[1]){
+            throw new IllegalArgumentException("Not a colour of the gamestate: " + firstColour);
+        }
+        this.firstColour = firstColour;
+    }
+
+    /**
+     * @return the colour moving first
+     */
+    public char getFirstColour(){
+        return firstColour;
+    }
+
+    public char[] getColours() {
+        return colours;
+    }
+
+    /**
+     * The hash is updated incrementally by {@link placeCounter} and {@link unplaceCounter},
+     * so equal boards reached through different move orders share the same hash.
+     * @return the Zobrist hash of the current board
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * @return the Zobrist hash of the board reflected left to right, column 0 swapping with 6
+     */
+    public long getMirroredHash() {
+        return mirroredHash;
+    }
+
+    /**
+     * A board and its mirror image are equally good for each player, so the lower of
+     * the two hashes is used as the key for both, halving the positions to remember.
+     * @return the lower of the hash and the mirrored hash
+     */
+    public long getCanonicalHash() {
+        return Math.min(hash, mirroredHash);
+    }
+
+    /**
+     * @return true if the canonical hash is the mirrored hash, so columns looked up by it
+     *         are mirrored, see {@link mirrorColumn}
+     */
+    public boolean isMirrored() {
+        return mirroredHash < hash;
+    }
+
+    /**
+     * Unlike the hash, the key is exact: different positions never share a key.
+     * @return the key of the position in the opening book and tablebase, the bitboard
+     *         of the player to move plus the mask of every counter, or the mirror image's
+     *         if lower (see {@link OpeningBook#key})
+     */
+    public long getPositionKey() {
+        if (!isStandardSize()){
+            throw new IllegalStateException("Position keys are only for the standard board");
+        }
+        long mask = Solver.toBitboard(this, ' ') ^ BitboardGamestate.BOARD_MASK;
+        return OpeningBook.key(Solver.toBitboard(this, getColourToPlay()), mask);
+    }
+
+    /**
+     * @param column
+     *      A column of this board, or of its mirror image
+     * @return the column it reflects to, or -1 for -1
+     */
+    public int mirrorColumn(int column) {
+        return column < 0 ? column : numColumns - 1 - column;
+    }
+
+    /**
+     * The heuristic the hard ai scores boards by, kept up to date as counters are (un)placed.
+     * @param colour
+     *      One of the two counter colours of this gamestate
+     * @return the heuristic score of the board in favour of the given colour
+     */
+    public int getHeuristicScore(char colour){
+        return evaluator.getScore(colourIndex(colour));
+    }
+
+    /**
+     * Uses a fixed seed so hashes are stable between runs.
+     * @param numCells
+     *      The number of cells on the board
+     * @return a table of random keys, one per colour per cell
+     */
+    private static long[][] zobristKeys(int numCells){
+        Random r = new Random(0x5EED_C4L);
+        long[][] keys = new long[2][numCells];
+        for (int i = 0; i < 2; i++){
+            for (int cell = 0; cell < numCells; cell++){
+                keys[i][cell] = r.nextLong();
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * @param colour
+     *      One of the two counter colours of this gamestate
+     * @return 1 if colour belongs to the second player, 0 otherwise
+     */
+    protected int colourIndex(char colour){
+        return colour == colours[1] ? 1 : 0;
+    }
 }
@@ -1,27 +1,302 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * More advanced idea for an ai implementing minimax with alpha/beta pruning 
- * and shallow search move sorting to complement alpha/beta pruning.
+ * and move ordering (see {@link MoveOrderer}) to complement alpha/beta pruning.
+ * By default searches by negamax with principal variation search and aspiration
+ * windows, plain minimax being kept as a switch for comparison.
  * 
  * Rewards function favours in order:
  * winning, not losing, 3 in a row, playing in the middle column, 
  * two in a row, preventing opponent 3 in a row.
+ * 
+ * Results are remembered in a transposition table keyed by the canonical hash of
+ * the gamestate, so a board and its mirror image share one entry.
+ * 
+ * Can search with multiple threads by splitting the root moves between helper
+ * ais, each searching its own copy of the gamestate and sharing the transposition table.
+ * 
+ * Each search is measured (see {@link SearchStats}), the stats being available after
+ * the move, passed to any {@link SearchListener}s and recorded as a {@link SearchEvent}
+ * when Java Flight Recorder is running.
+ * 
+ * Can ponder, searching the opponent's replies on a background thread while they
+ * think, filling the transposition table so the next move is found sooner.
+ *
+ * The transposition table can be saved to a file and loaded by a later process,
+ * so a restarted ai doesn't have to search everything again.
  */
 public class HardAI extends Player{
+    static final int WIN_SCORE = 1000000; //greater than any heuristic score
+    static final int FULL_COLUMN = Integer.MIN_VALUE; //the score of a column which can't be played, see scoreColumns
+    private static final int INFINITY = Integer.MAX_VALUE; //negamax windows are (-INFINITY, INFINITY), so negating can't overflow
+    private static final int ASPIRATION_WINDOW = 8; //half width of the first root window around the previous score
+    private static final int ASPIRATION_LIMIT = 1000; //search the full window once the window would be wider
+    static final int TABLE_SIZE_BITS = 20;
+
     private char opColour;
     private int maxDepth;
+    private int searchDepth = 7; //used when there is no time budget
+    private long timeBudgetMillis; //0 for a fixed depth search
+    private boolean principalVariationSearch = true; //negamax with PVS and aspiration windows, otherwise minimax
+    private TranspositionTable tt; //kept between turns
+    private OpeningBook book; //null if not playing from a book
+    private Tablebase tablebase; //null if not searching with a tablebase
+
+    private long deadline; //System.nanoTime() to abort the search at
+    private boolean stoppable; //whether the current iteration can be aborted by the stop signal
+    private volatile AtomicBoolean stopSignal; //set by another thread to stop the caller's search, or null
+    private HardAI owner; //the ai whose stop signal aborts this one's search, itself unless a helper
+    private long nodes; //nodes searched this turn, used to check the deadline periodically
+    private long leafEvaluations; //gamestates scored at the leaves of the search this turn
+    private long ttHits; //gamestates found in the transposition table this turn
+    private int pvColumn; //best root column of the previous iteration, or -1
+
+    //The board the buffers below are sized for, reallocated if a search is given another size
+    private int numColumns = Gamestate.STANDARD_WIDTH;
+    private int numRows = Gamestate.STANDARD_HEIGHT;
+    private int connect = Gamestate.STANDARD_CONNECT; //the table's scores are only for this
+    private MoveOrderer orderer = new MoveOrderer(numColumns * numRows);
+    //Ordered moves and their ordering scores for each ply, preallocated so the search allocates nothing
+    private int[][] moveBuffer = new int[numColumns * numRows + 1][numColumns];
+    private int[][] moveScores = new int[numColumns * numRows + 1][numColumns];
+
+    private HardAI[] helpers = new HardAI[0]; //used for the root moves when searching with multiple threads
+    private ExecutorService pool;
+
+    private List<SearchListener> listeners = new CopyOnWriteArrayList<>();
+    private SearchStats lastSearchStats;
+
+    private ExecutorService ponderer; //null unless pondering
+    private Future<?> ponderSearch; //the running or last ponder search, null if stopped
+    private AtomicBoolean ponderStop; //stops the ponder search
+    private volatile AtomicBoolean ponderSignal; //the running ponder search's stop, null when not pondering
+    //Results of the ponder search by reply column: the hash of the gamestate after the reply,
+    //its best move packed with its score and the depth searched, 0 if not searched
+    private long[] ponderHashes = new long[numColumns];
+    private long[] ponderResults = new long[numColumns];
+    private int[] ponderDepths = new int[numColumns];
 
     public HardAI(char colour, char opColour){
+        this(colour, opColour, new TranspositionTable(TABLE_SIZE_BITS));
+    }
+
+    /**
+     * Creates an ai sharing a transposition table with other ais of the same colour,
+     * so many ais searching on their own threads can share what they learn.
+     * @param colour
+     *      The colour of the ai
+     * @param opColour
+     *      The colour of the opponent
+     * @param tt
+     *      The table, only to be shared by ais of the same colour, as its scores are for the ai
+     */
+    HardAI(char colour, char opColour, TranspositionTable tt){
         name = "Hard AI";
         this.colour = colour;
         this.opColour = opColour;
+        this.tt = tt;
+        owner = this;
+    }
+
+    /**
+     * Creates a helper for searching root moves on another thread,
+     * sharing the transposition table of its parent.
+     * @param parent
+     *      The ai the helper searches for
+     */
+    private HardAI(HardAI parent){
+        name = parent.name;
+        this.colour = parent.colour;
+        this.opColour = parent.opColour;
+        this.tt = parent.tt;
+        this.principalVariationSearch = parent.principalVariationSearch;
+        this.tablebase = parent.tablebase;
+        this.pvColumn = -1;
+        this.owner = parent;
+    }
+
+    /**
+     * @param searchDepth
+     *      The depth to search to each turn when there is no time budget
+     */
+    public void setSearchDepth(int searchDepth){
+        this.searchDepth = searchDepth;
+    }
+
+    /**
+     * @param timeBudgetMillis
+     *      The time allowed per move, searching deeper until it runs out,
+     *      or 0 to search to a fixed depth instead
+     */
+    public void setTimeBudget(long timeBudgetMillis){
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    /**
+     * @param principalVariationSearch
+     *      true to search with {@link negamax}, principal variation search with aspiration
+     *      windows at the root, false for plain alpha/beta {@link minimax}, for comparison
+     */
+    public void setPrincipalVariationSearch(boolean principalVariationSearch){
+        this.principalVariationSearch = principalVariationSearch;
+        for (HardAI helper : helpers){
+            helper.principalVariationSearch = principalVariationSearch;
+        }
+    }
+
+    /**
+     * @param book
+     *      The opening book to play from while the gamestate is covered by it, or null for none
+     */
+    public void setOpeningBook(OpeningBook book){
+        this.book = book;
+    }
+
+    /**
+     * @param tablebase
+     *      The endgame tablebase to end the search with wherever it covers the gamestate,
+     *      or null for none
+     */
+    public void setTablebase(Tablebase tablebase){
+        this.tablebase = tablebase;
+        for (HardAI helper : helpers){
+            helper.tablebase = tablebase;
+        }
+    }
+
+    /**
+     * @param pondering
+     *      true to search the opponent's replies while they think after each move
+     */
+    public void setPondering(boolean pondering){
+        stopPondering();
+        if (pondering && ponderer == null){
+            ponderer = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "HardAI ponder");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        else if (!pondering && ponderer != null){
+            ponderer.shutdown();
+            ponderer = null;
+        }
+    }
+
+    /**
+     * Stops pondering and shuts down the search threads, leaving the ai searching on
+     * the calling thread only.
+     */
+    @Override
+    public void shutdown(){
+        setPondering(false);
+        setThreads(1);
+    }
+
+    /**
+     * Forgets everything learnt from previous searches, the transposition table
+     * and move ordering, as if the ai had just been created.
+     */
+    public void reset(){
+        stopPondering();
+        Arrays.fill(ponderDepths, 0);
+        tt.clear();
+        orderer.reset();
+        for (HardAI helper : helpers){
+            helper.orderer.reset();
+        }
+    }
+
+    /**
+     * Saves the transposition table to a snapshot file, so another ai, in this or a
+     * later process, can start from what this one has searched, see {@link loadTable}.
+     * @param file
+     *      The file to write
+     * @return the number of entries saved
+     * @throws IOException if the file can't be written
+     */
+    public int saveTable(Path file) throws IOException{
+        stopPondering(); //the ponder search writes to the table
+        return tt.save(file, numColumns, numRows, connect, colour);
     }
 
     /**
-     * Finds the best move for the AI to play, via the minimax algorithm
+     * Warm starts the transposition table from a snapshot saved by {@link saveTable},
+     * unless it was saved with another evaluation, board or colour.
+     * @param file
+     *      The snapshot file
+     * @param gs
+     *      The gamestate the ai is about to play on
+     * @return the number of entries loaded, 0 if the snapshot was discarded
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if the file isn't a snapshot
+     */
+    public int loadTable(Path file, Gamestate gs) throws IOException{
+        stopPondering();
+        ensureBoardSize(gs);
+        return tt.load(file, numColumns, numRows, connect, colour);
+    }
+
+    /**
+     * @param listener
+     *      Listener to be told of each iteration and move chosen
+     */
+    public void addSearchListener(SearchListener listener){
+        listeners.add(listener);
+    }
+
+    public void removeSearchListener(SearchListener listener){
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return the stats of the last move chosen, or null if there hasn't been one
+     */
+    public SearchStats getLastSearchStats(){
+        return lastSearchStats;
+    }
+
+    /**
+     * @param threads
+     *      The number of threads to search with, 1 to search on the calling thread only
+     */
+    public void setThreads(int threads){
+        stopPondering();
+        if (pool != null){
+            pool.shutdownNow();
+            pool = null;
+        }
+        helpers = new HardAI[threads > 1 ? threads : 0];
+        for (int i = 0; i < helpers.length; i++){
+            helpers[i] = new HardAI(this);
+        }
+        if (helpers.length > 0){
+            pool = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "HardAI search");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Finds the best move for the AI to play, from the opening book if it has one
+     * covering the gamestate, otherwise via the minimax algorithm.
+     * Searches to a fixed depth, or if a time budget has been set, deepens
+     * one move at a time until the budget runs out.
      * 
      * @param gs
      *      The current gamestate of the runtime program
@@ -29,13 +304,599 @@ public class HardAI extends Player{
      * @return int representing the column of the best move
      */
     public int getInput(Gamestate gs){
-        maxDepth = 7;
-        float startTime = System.nanoTime();
-        int bestMove = minimax(gs, maxDepth, Integer.MIN_VALUE, Integer.MAX_VALUE, true)[1];
-        float totalTime = (System.nanoTime() - startTime)/1000000000;
-        System.out.printf("Ai played %d, from a depth of %d in ", (bestMove+1), maxDepth);
-        System.out.print(totalTime + "seconds\n");
-        return bestMove;
+        SearchStats stats = search(gs);
+        if (verbose){
+            if (stats.isFromBook()){
+                System.out.printf("Ai played %d, from the opening book\n", (stats.getBestColumn()+1));
+            }
+            else {
+                float totalTime = stats.getElapsedNanos() / 1000000000f;
+                System.out.printf("Ai played %d, from a depth of %d in ", (stats.getBestColumn()+1), stats.getDepth());
+                System.out.print(totalTime + "seconds\n");
+            }
+        }
+        if (ponderer != null){
+            startPondering(gs, stats);
+        }
+        return stats.getBestColumn();
+    }
+
+    /**
+     * Chooses a move as {@link getInput} does, without printing it.
+     * @param gs
+     *      The current gamestate of the runtime program
+     * @return the stats of the search, including the column of the best move
+     */
+    public SearchStats search(Gamestate gs){
+        if (timeBudgetMillis > 0){
+            return search(gs, gs.getEmptyCells(), timeBudgetMillis, true);
+        }
+        return search(gs, searchDepth, 0, false);
+    }
+
+    /**
+     * Chooses a move by iterative deepening whatever the ai's settings, stopping at
+     * whichever comes first of the depth limit, the time budget or the stop signal.
+     * When stopped the best move of the deepest completed iteration is played,
+     * the first iteration always completes.
+     * @param gs
+     *      The current gamestate of the runtime program
+     * @param depthLimit
+     *      The deepest iteration to search
+     * @param timeBudgetMillis
+     *      The time allowed, or 0 to search until the depth limit or stop signal
+     * @param stop
+     *      Set by another thread to stop the search, or null if it can't be stopped
+     * @return the stats of the search, including the column of the best move
+     */
+    public SearchStats searchIteratively(Gamestate gs, int depthLimit, long timeBudgetMillis, AtomicBoolean stop){
+        stopPondering(); //before the signal is set, the ponder search has its own
+        stopSignal = stop;
+        try {
+            return search(gs, depthLimit, timeBudgetMillis, true);
+        }
+        finally {
+            stopSignal = null;
+        }
+    }
+
+    /**
+     * Scores every column rather than only finding the best, for analysing positions.
+     * Each column is searched with the full window, so every score is exact, on the
+     * calling thread and without the opening book, stats or listeners.
+     * @param gs
+     *      A gamestate with the ai to move, left as it was found
+     * @param depth
+     *      The depth to search each column to, including the move in the column
+     * @return the score of each column for the ai, by column, or {@link FULL_COLUMN}
+     *         for full columns
+     * @throws IllegalArgumentException if the depth is less than 1
+     */
+    public int[] scoreColumns(Gamestate gs, int depth){
+        if (depth < 1){
+            throw new IllegalArgumentException("depth must be at least 1");
+        }
+        stopPondering();
+        ensureBoardSize(gs);
+        deadline = Long.MAX_VALUE;
+        stoppable = false;
+        pvColumn = -1;
+        maxDepth = depth;
+        orderer.newSearch();
+        int[] scores = new int[numColumns];
+        for (int column = 0; column < numColumns; column++){
+            if (!gs.canPlay(column)){
+                scores[column] = FULL_COLUMN;
+                continue;
+            }
+            gs.placeCounter(column, colour);
+            try {
+                scores[column] = searchReply(gs, depth-1, -INFINITY, INFINITY);
+            }
+            finally {
+                gs.unplaceCounter(column);
+            }
+        }
+        return scores;
+    }
+
+    private SearchStats search(Gamestate gs, int depth, long timeBudgetMillis, boolean iterative){
+        stopPondering();
+        ensureBoardSize(gs);
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        int bookMove = book != null ? book.getBestColumn(gs) : -1;
+        int pondered = ponderedReply(gs, Math.min(depth, gs.getEmptyCells()));
+        SearchStats stats;
+        if (bookMove >= 0){
+            stats = new SearchStats(bookMove, 0, 0, true, 0, 0, 0, new long[numColumns],
+                System.nanoTime() - startTime, new int[] {bookMove});
+        }
+        else if (pondered >= 0){
+            resetCounts(); //nothing searched this turn
+            stats = collectStats(gs, ponderResults[pondered], ponderDepths[pondered], startTime);
+        }
+        else {
+            tt.nextGeneration();
+            resetCounts();
+            long best;
+            if (iterative){
+                long searchDeadline = timeBudgetMillis > 0 ? startTime + timeBudgetMillis * 1000000 : Long.MAX_VALUE;
+                best = iterativeDeepening(gs, startTime, searchDeadline, Math.min(depth, gs.getEmptyCells()));
+            }
+            else {
+                deadline = Long.MAX_VALUE;
+                stoppable = false;
+                pvColumn = -1;
+                best = searchRoot(gs, depth);
+            }
+            stats = collectStats(gs, best, maxDepth, startTime);
+        }
+        lastSearchStats = stats;
+        for (SearchListener listener : listeners){
+            listener.onSearchComplete(stats);
+        }
+        event.commit(stats);
+        return stats;
+    }
+
+    /**
+     * Searches to a depth of 1, 2, 3... until the deadline passes, the depth limit
+     * is reached, the search is stopped, or a forced win or loss has been found.
+     * Each iteration tries the best column of the previous one first.
+     * The first iteration always completes, so there is always a move to play.
+     * 
+     * @param gs
+     *      The current gamestate of the runtime program
+     * @param startTime
+     *      The {@link System#nanoTime} the search started at
+     * @param deadline
+     *      The {@link System#nanoTime} after which searching should stop
+     * @param depthLimit
+     *      The deepest iteration to search, no more than the number of empty cells
+     * 
+     * @return the score and column of the best move from the deepest completed search,
+     *         leaving the depth of that search in maxDepth
+     */
+    private long iterativeDeepening(Gamestate gs, long startTime, long deadline, int depthLimit){
+        long best = 0;
+        int depthReached = 0;
+        pvColumn = -1;
+        for (int depth = 1; depth <= depthLimit; depth++){
+            this.deadline = depth == 1 ? Long.MAX_VALUE : deadline;
+            this.stoppable = depth > 1;
+            try {
+                if (principalVariationSearch && depth > 1 && helpers.length == 0){
+                    best = aspirationSearch(gs, depth, score(best));
+                }
+                else {
+                    best = searchRoot(gs, depth);
+                }
+            }
+            catch (SearchTimeoutException e){
+                break;
+            }
+            depthReached = depth;
+            pvColumn = column(best);
+            if (!listeners.isEmpty()){
+                SearchStats stats = collectStats(gs, best, depth, startTime);
+                for (SearchListener listener : listeners){
+                    listener.onIteration(stats);
+                }
+            }
+            if (Math.abs(score(best)) > WIN_SCORE / 2 || (stopSignal != null && stopSignal.get())){
+                break;
+            }
+        }
+        maxDepth = depthReached;
+        return best;
+    }
+
+    /**
+     * Starts searching the opponent's replies to the ai's move on the ponder thread,
+     * the reply the search expects first, then the others from the centre out.
+     * @param gs
+     *      The gamestate the ai moved in, without its move
+     * @param stats
+     *      The stats of the ai's move
+     */
+    private void startPondering(Gamestate gs, SearchStats stats){
+        Gamestate position = gs.copy(); //the game carries on with the caller's gamestate
+        position.placeCounter(stats.getBestColumn(), colour);
+        Arrays.fill(ponderDepths, 0);
+        if (position.isWin(colour) || position.isFull()){
+            return;
+        }
+        int[] pv = stats.getPrincipalVariation();
+        int expected = pv.length >= 2 ? pv[1] : -1;
+        int[] replies = new int[numColumns];
+        int count = 0;
+        if (expected >= 0){
+            replies[count++] = expected;
+        }
+        for (int i = 0; i < numColumns; i++){
+            int column = numColumns / 2 + ((i & 1) == 0 ? i / 2 : -(i + 1) / 2); //3, 2, 4, 1, 5, 0, 6 on 7 columns
+            if (column != expected && position.canPlay(column)){
+                replies[count++] = column;
+            }
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        ponderStop = stop;
+        int[] ordered = Arrays.copyOf(replies, count);
+        ponderSearch = ponderer.submit(() -> ponder(position, ordered, stop));
+    }
+
+    /**
+     * Stops any ponder search, waiting for it to finish so the ai can search again.
+     * Pondering carries on after the next move unless turned off.
+     */
+    public void stopPondering(){
+        if (ponderSearch == null){
+            return;
+        }
+        ponderStop.set(true);
+        try {
+            ponderSearch.get();
+        }
+        catch (ExecutionException e){
+            throw new IllegalStateException(e.getCause());
+        }
+        catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        ponderSearch = null;
+    }
+
+    /**
+     * Iterative deepening over all the replies at once, searching each to a depth
+     * before any goes deeper, so whichever the opponent plays has been searched as far
+     * as the others. Runs until stopped or every reply is searched to the end of the game
+     * or has a forced result.
+     * @param gs
+     *      The gamestate after the ai's move, the ponder thread's own copy
+     * @param replies
+     *      The columns the opponent can play, most likely first
+     * @param stop
+     *      Set when the opponent has moved
+     */
+    private void ponder(Gamestate gs, int[] replies, AtomicBoolean stop){
+        ponderSignal = stop;
+        deadline = Long.MAX_VALUE;
+        stoppable = true;
+        tt.nextGeneration();
+        resetCounts();
+        try {
+            for (int depth = 1; depth < gs.getEmptyCells(); depth++){
+                for (int reply : replies){
+                    if (stop.get()){
+                        return;
+                    }
+                    if (ponderDepths[reply] > 0 && Math.abs(score(ponderResults[reply])) > WIN_SCORE / 2){
+                        continue; //already forced
+                    }
+                    gs.placeCounter(reply, opColour);
+                    try {
+                        if (gs.isWin(opColour) || gs.isFull()){
+                            continue;
+                        }
+                        pvColumn = ponderDepths[reply] > 0 ? column(ponderResults[reply]) : -1;
+                        long best = principalVariationSearch && depth > 1 && helpers.length == 0
+                            ? aspirationSearch(gs, depth, score(ponderResults[reply])) : searchRoot(gs, depth);
+                        ponderHashes[reply] = gs.getHash();
+                        ponderResults[reply] = best;
+                        ponderDepths[reply] = depth;
+                    }
+                    finally {
+                        gs.unplaceCounter(reply);
+                    }
+                }
+            }
+        }
+        catch (SearchTimeoutException e){
+            //the opponent has moved, the table keeps what was searched
+        }
+        finally {
+            ponderSignal = null;
+        }
+    }
+
+    /**
+     * @param gs
+     *      The gamestate to search
+     * @param depth
+     *      The depth the search needs
+     * @return the reply column which the ponder search searched the gamestate after
+     *         to at least the depth, or found a forced result for, or -1 if there isn't one
+     */
+    private int ponderedReply(Gamestate gs, int depth){
+        for (int reply = 0; reply < numColumns; reply++){
+            if (ponderDepths[reply] > 0 && ponderHashes[reply] == gs.getHash()
+                    && (ponderDepths[reply] >= depth || Math.abs(score(ponderResults[reply])) > WIN_SCORE / 2)){
+                return reply;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sizes the move ordering and buffers of this ai and its helpers for the gamestate's
+     * board, if they were sized for another. The transposition table is cleared, as the
+     * hashes of one size of board mean nothing on another, nor the scores of one
+     * connect length on another.
+     * @param gs
+     *      The gamestate about to be searched
+     */
+    private void ensureBoardSize(Gamestate gs){
+        if (gs.getConnect() != connect){
+            tt.clear();
+            connect = gs.getConnect();
+        }
+        if (gs.getWidth() != numColumns || gs.getHeight() != numRows){
+            tt.clear();
+            ponderHashes = new long[gs.getWidth()];
+            ponderResults = new long[gs.getWidth()];
+            ponderDepths = new int[gs.getWidth()];
+        }
+        for (HardAI ai : withHelpers()){
+            if (gs.getWidth() == ai.numColumns && gs.getHeight() == ai.numRows){
+                continue; //helpers created since are sized for the standard board
+            }
+            ai.numColumns = gs.getWidth();
+            ai.numRows = gs.getHeight();
+            int maxPly = ai.numColumns * ai.numRows; //the most moves a game can last
+            ai.orderer = new MoveOrderer(maxPly, ai.numColumns, ai.numRows);
+            ai.moveBuffer = new int[maxPly + 1][ai.numColumns];
+            ai.moveScores = new int[maxPly + 1][ai.numColumns];
+        }
+    }
+
+    /**
+     * Starts the counts of a new search, for this ai and its helpers.
+     */
+    private void resetCounts(){
+        for (HardAI ai : withHelpers()){
+            ai.orderer.newSearch();
+            ai.orderer.resetCounts();
+            ai.nodes = 0;
+            ai.leafEvaluations = 0;
+            ai.ttHits = 0;
+        }
+    }
+
+    /**
+     * Totals the counts of this ai and its helpers so far this search.
+     * @param gs
+     *      The root gamestate
+     * @param best
+     *      The best score and column found
+     * @param depth
+     *      The depth searched to
+     * @param startTime
+     *      The {@link System#nanoTime} the search started at
+     * @return the stats of the search
+     */
+    private SearchStats collectStats(Gamestate gs, long best, int depth, long startTime){
+        long totalNodes = 0;
+        long totalLeafEvaluations = 0;
+        long totalTtHits = 0;
+        long[] cutoffsByMoveIndex = new long[numColumns];
+        for (HardAI ai : withHelpers()){
+            totalNodes += ai.nodes;
+            totalLeafEvaluations += ai.leafEvaluations;
+            totalTtHits += ai.ttHits;
+            ai.orderer.addCutoffsByMoveIndex(cutoffsByMoveIndex);
+        }
+        return new SearchStats(column(best), score(best), depth, false, totalNodes, totalLeafEvaluations,
+            totalTtHits, cutoffsByMoveIndex, System.nanoTime() - startTime,
+            principalVariation(gs, column(best), depth));
+    }
+
+    private List<HardAI> withHelpers(){
+        List<HardAI> ais = new ArrayList<>(Arrays.asList(helpers));
+        ais.add(0, this);
+        return ais;
+    }
+
+    /**
+     * Follows the best columns stored in the transposition table from the root,
+     * the line of play the search expects.
+     * @param gs
+     *      The root gamestate, left as it was found
+     * @param column
+     *      The best column at the root
+     * @param depth
+     *      The most moves to follow
+     * @return the columns of the line, starting with the root's
+     */
+    private int[] principalVariation(Gamestate gs, int column, int depth){
+        int[] line = new int[depth];
+        int length = 0;
+        boolean aiToMove = true;
+        while (length < depth && column >= 0 && gs.canPlay(column)){
+            char moveColour = aiToMove ? colour : opColour;
+            gs.placeCounter(column, moveColour);
+            line[length++] = column;
+            if (gs.isWin(moveColour) || gs.isFull()){
+                break;
+            }
+            aiToMove = !aiToMove;
+            long entry = tt.probe(gs.getCanonicalHash());
+            column = entry != TranspositionTable.MISS ? tableColumn(gs, entry) : -1;
+        }
+        for (int i = length - 1; i >= 0; i--){
+            gs.unplaceCounter(line[i]);
+        }
+        return Arrays.copyOf(line, length);
+    }
+
+    /**
+     * Searches the root gamestate to the given depth, on this thread or split
+     * between the helpers if there are any.
+     * @param gs
+     *      The current gamestate of the runtime program
+     * @param depth
+     *      The depth to search to
+     * @return the score of the best move packed with its column, see {@link pack}
+     */
+    private long searchRoot(Gamestate gs, int depth){
+        maxDepth = depth;
+        if (helpers.length > 0){
+            return parallelRoot(gs, depth);
+        }
+        if (principalVariationSearch){
+            return negamax(gs, depth, -INFINITY, INFINITY, 0);
+        }
+        return minimax(gs, depth, -INFINITY, INFINITY, true);
+    }
+
+    /**
+     * Searches the root with a narrow window around the previous iteration's score,
+     * as most of the time the score changes little between iterations and a narrow
+     * window prunes more. If the score falls outside the window it is searched
+     * again with a wider one, four times as wide each time, until the full window.
+     * @param gs
+     *      The current gamestate of the runtime program
+     * @param depth
+     *      The depth to search to
+     * @param guess
+     *      The score of the previous iteration
+     * @return the score of the best move packed with its column
+     */
+    private long aspirationSearch(Gamestate gs, int depth, int guess){
+        maxDepth = depth;
+        for (int delta = ASPIRATION_WINDOW; delta <= ASPIRATION_LIMIT; delta *= 4){
+            int alpha = guess - delta;
+            int beta = guess + delta;
+            long result = negamax(gs, depth, alpha, beta, 0);
+            if (score(result) > alpha && score(result) < beta){
+                return result;
+            }
+        }
+        return negamax(gs, depth, -INFINITY, INFINITY, 0);
+    }
+
+    /**
+     * Searches a gamestate with the opponent to move, by whichever algorithm is selected.
+     * @return the score of the gamestate for the ai
+     */
+    private int searchReply(Gamestate gs, int depth, int alpha, int beta){
+        if (principalVariationSearch){
+            return -score(negamax(gs, depth, -beta, -alpha, 1));
+        }
+        return score(minimax(gs, depth, alpha, beta, false));
+    }
+
+    /**
+     * Root splitting. The first move in the ordering, most likely the best, is searched
+     * on this thread to find a lower bound on the score, then the remaining root moves
+     * are handed out to the helpers one at a time, each searching a copy of the gamestate
+     * using the best score found so far as alpha.
+     * @param gs
+     *      The current gamestate of the runtime program
+     * @param depth
+     *      The depth to search to
+     * @return the score of the best move packed with its column
+     */
+    private long parallelRoot(Gamestate gs, int depth){
+        int winning = gs.getWinningColumns(colour);
+        if (winning != 0){
+            return pack(WIN_SCORE - 1, Integer.numberOfTrailingZeros(winning));
+        }
+        long entry = tt.probe(gs.getCanonicalHash());
+        int ttColumn = pvColumn >= 0 ? pvColumn
+            : entry != TranspositionTable.MISS ? tableColumn(gs, entry) : -1;
+        int count = orderMoves(gs, 0, true, ttColumn, gs.getNonLosingColumns(colour));
+        int[] moves = Arrays.copyOf(moveBuffer[0], count); //the helpers have their own buffers
+
+        int[] best = new int[2]; //{score, column}, guarded by itself
+        int column = moves[0];
+        gs.placeCounter(column, colour);
+        try {
+            best[0] = searchReply(gs, depth-1, -INFINITY, INFINITY);
+            best[1] = column;
+        }
+        finally {
+            gs.unplaceCounter(column);
+        }
+
+        AtomicInteger next = new AtomicInteger(1);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (HardAI helper : helpers){
+            Gamestate copy = gs.copy();
+            tasks.add(() -> {
+                helper.searchRootMoves(copy, moves, next, best, depth, deadline, stoppable);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)){
+                future.get();
+            }
+        }
+        catch (ExecutionException e){
+            if (e.getCause() instanceof RuntimeException){
+                throw (RuntimeException) e.getCause(); //including timeouts
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw SearchTimeoutException.INSTANCE;
+        }
+
+        tt.store(gs.getCanonicalHash(), toTableScore(best[0], 0), depth, TranspositionTable.EXACT,
+            gs.isMirrored() ? gs.mirrorColumn(best[1]) : best[1]);
+        return pack(best[0], best[1]);
+    }
+
+    /**
+     * Run by each helper, takes root moves in turn until there are none left.
+     * A move only replaces the best if it beats the alpha it was searched with,
+     * as its score is otherwise only an upper bound.
+     * @param gs
+     *      The helper's own copy of the root gamestate
+     * @param moves
+     *      The ordered root columns
+     * @param next
+     *      The index of the next root move to be searched
+     * @param best
+     *      The shared best {score, column}
+     * @param depth
+     *      The depth to search the root to
+     * @param deadline
+     *      The {@link System#nanoTime} to abort the search at
+     * @param stoppable
+     *      Whether the parent's stop signal aborts the search
+     */
+    private void searchRootMoves(Gamestate gs, int[] moves, AtomicInteger next, int[] best, int depth,
+            long deadline, boolean stoppable){
+        this.maxDepth = depth;
+        this.deadline = deadline;
+        this.stoppable = stoppable;
+        for (int i = next.getAndIncrement(); i < moves.length; i = next.getAndIncrement()){
+            int column = moves[i];
+            int alpha;
+            synchronized (best){
+                alpha = best[0];
+            }
+
+            int eval;
+            gs.placeCounter(column, colour);
+            try {
+                eval = searchReply(gs, depth-1, alpha, INFINITY);
+            }
+            finally {
+                gs.unplaceCounter(column);
+            }
+
+            synchronized (best){
+                if (eval > alpha && eval > best[0]){
+                    best[0] = eval;
+                    best[1] = column;
+                }
+            }
+        }
     }
 
     /**
@@ -45,8 +906,15 @@ public class HardAI extends Player{
      * the possible moves on their turn. The other 'player' (the opponent) aims to 
      * minimise the score on their turn.
      * 
-     * Uses alpha/beta pruning along with a shallow search sorting algorithm
-     * for performance speedups.  
+     * Uses alpha/beta pruning along with killer and history move ordering
+     * for performance speedups. Results are remembered in the transposition table,
+     * whose best column is tried first and whose scores can cut off the search entirely.
+     * A player who can win with their next counter does so without searching, and
+     * moves which let the other player win next turn are never searched (see
+     * {@link Gamestate#getNonLosingColumns}), unless every move does.
+     * 
+     * Nothing is allocated per node: the moves are ordered in a buffer preallocated
+     * for each ply, and the result is returned as a primitive.
      * 
      * @param gs
      *      The current gamestate of the minimax algorithm
@@ -61,77 +929,405 @@ public class HardAI extends Player{
      * 
      * @return If a terminal node or maximum depth are reached, returns the 
      *         score of the current gamestate along with a dummy column.
-     *         Otherwise, if maximising returns the maximum score along with 
-     *         the respective best column, of the possible moves from the current gamestate. 
-     *         Or, if minimising, the minimum score along with a dummy column.
+     *         Otherwise returns the maximum score if maximising, or the minimum
+     *         score if minimising, along with the respective best column,
+     *         of the possible moves from the current gamestate.
+     *         The score and column are packed into a long, see {@link pack}.
      */
-    private int[] minimax(Gamestate gs, int depth, int alpha, int beta, boolean isMaximiser){
+    private long minimax(Gamestate gs, int depth, int alpha, int beta, boolean isMaximiser){
+        if ((++nodes & 255) == 0 && (System.nanoTime() > deadline || isStopped())){
+            throw SearchTimeoutException.INSTANCE;
+        }
         if (isTerminal(gs) || depth == 0){
-            return new int[] {getScore(gs, depth), -1};
+            leafEvaluations++;
+            return pack(getScore(gs, depth), -1);
+        }
+
+        int ply = maxDepth - depth;
+        int alphaOrig = alpha;
+        int betaOrig = beta;
+        long hash = gs.getCanonicalHash(); //a board and its mirror share an entry
+        long entry = tt.probe(hash);
+        int ttColumn = -1;
+        if (entry != TranspositionTable.MISS){
+            ttHits++;
+            ttColumn = tableColumn(gs, entry);
+            if (TranspositionTable.depth(entry) >= depth){
+                int ttScore = fromTableScore(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT){
+                    return pack(ttScore, ttColumn);
+                }
+                else if (bound == TranspositionTable.LOWER_BOUND){
+                    alpha = Math.max(alpha, ttScore);
+                }
+                else {
+                    beta = Math.min(beta, ttScore);
+                }
+                if (beta <= alpha){
+                    return pack(ttScore, ttColumn);
+                }
+            }
+        }
+        int result = probeTablebase(gs, ply);
+        if (result != Tablebase.NOT_FOUND){
+            int score = tablebaseScore(result, gs, ply);
+            return pack(isMaximiser ? score : -score, ttColumn);
+        }
+        if (ply == 0 && pvColumn >= 0){
+            ttColumn = pvColumn; //the previous iteration's best move
         }
 
+        char moveColour = isMaximiser ? colour : opColour;
+        int winning = gs.getWinningColumns(moveColour);
+        if (winning != 0){
+            int score = WIN_SCORE - (ply + 1); //the score of the win one move from here
+            return pack(isMaximiser ? score : -score, Integer.numberOfTrailingZeros(winning));
+        }
+
+        int count = orderMoves(gs, ply, isMaximiser, ttColumn, gs.getNonLosingColumns(moveColour));
+        int[] moves = moveBuffer[ply];
+        int bestEval;
+        int bestMove = -1;
         if (isMaximiser){
-            Integer maxEval = Integer.MIN_VALUE;
-            int bestMove = -1;
-            for (Move move : getShallowSearchColumns(gs, isMaximiser)){
-                int column = move.getColumn();
+            bestEval = -INFINITY;
+            for (int i = 0; i < count; i++){
+                int column = moves[i];
 
+                int eval;
                 gs.placeCounter(column, colour);
-                int eval = minimax(gs, depth-1, alpha, beta, false)[0];
-                gs.unplaceCounter(column);
+                try {
+                    eval = score(minimax(gs, depth-1, alpha, beta, false));
+                }
+                finally {
+                    gs.unplaceCounter(column); //also restores the gamestate when the search is aborted
+                }
 
-                if (eval > maxEval){
-                    maxEval = eval;
-                    bestMove = move.getColumn();
+                if (eval > bestEval){
+                    bestEval = eval;
+                    bestMove = column;
                 }
 
                 alpha = Math.max(alpha, eval);
                 if (beta <= alpha){
+                    orderer.recordCutoff(ply, 0, column, gs.getNextRow(column), depth, i);
                     break;
                 }
             }
-            return new int[] {maxEval, bestMove};
         }
         else {
-            Integer maxEval = Integer.MAX_VALUE;
-            for (Move move : getShallowSearchColumns(gs, isMaximiser)){
-                int column = move.getColumn();
+            bestEval = INFINITY;
+            for (int i = 0; i < count; i++){
+                int column = moves[i];
 
+                int eval;
                 gs.placeCounter(column, opColour);
-                int eval = minimax(gs, depth-1, alpha, beta, true)[0];
-                gs.unplaceCounter(column);
-                maxEval = Math.min(maxEval, eval);
+                try {
+                    eval = score(minimax(gs, depth-1, alpha, beta, true));
+                }
+                finally {
+                    gs.unplaceCounter(column); //also restores the gamestate when the search is aborted
+                }
+
+                if (eval < bestEval){
+                    bestEval = eval;
+                    bestMove = column;
+                }
 
                 beta = Math.min(beta, eval);
                 if (beta <= alpha){
+                    orderer.recordCutoff(ply, 1, column, gs.getNextRow(column), depth, i);
                     break;
                 }
             }
-            return new int[] {maxEval, -1};
         }
+
+        int bound = bestEval <= alphaOrig ? TranspositionTable.UPPER_BOUND
+            : bestEval >= betaOrig ? TranspositionTable.LOWER_BOUND
+            : TranspositionTable.EXACT;
+        tt.store(hash, toTableScore(bestEval, ply), depth, bound,
+            gs.isMirrored() ? gs.mirrorColumn(bestMove) : bestMove);
+        return pack(bestEval, bestMove);
     }
 
     /**
-     * gets current playable moves and sorts them via a shallow search
-     * to help maximise the amount of pruning in alpha beta pruning in minimax
+     * Entries are stored under the gamestate's canonical hash, with the column of the
+     * canonical board, so the column is mirrored back if the gamestate is the mirror image.
+     * @param gs
+     *      The gamestate looked up
+     * @param entry
+     *      Its entry in the transposition table
+     * @return the best column of the entry, for the gamestate as it is
+     */
+    private static int tableColumn(Gamestate gs, long entry){
+        int column = TranspositionTable.column(entry);
+        return gs.isMirrored() ? gs.mirrorColumn(column) : column;
+    }
+
+    /**
+     * Looks the gamestate up in the tablebase if it has few enough empty cells, except
+     * at the root, where a column is needed rather than only a result. Probed after the
+     * transposition table, which is cheaper and remembers the results found from it.
+     * @return the result for the player to move, or {@link Tablebase#NOT_FOUND}
+     */
+    private int probeTablebase(Gamestate gs, int ply){
+        if (tablebase == null || ply == 0 || gs.getEmptyCells() > tablebase.getMaxEmptyCells()
+                || !gs.isStandardSize()){
+            return Tablebase.NOT_FOUND;
+        }
+        int result = tablebase.probe(gs.getPositionKey());
+        if (result != Tablebase.NOT_FOUND){
+            ttHits++; //counted as a table hit, it saves a search the same way
+        }
+        return result;
+    }
+
+    /**
+     * A tablebase win doesn't say how soon it comes, so it is scored as if it came with
+     * the last cell, later than any win the search finds but still a win.
+     * @return the score of a tablebase result for the player to move
+     */
+    private int tablebaseScore(int result, Gamestate gs, int ply){
+        int score = WIN_SCORE - ply - gs.getEmptyCells();
+        return result == Tablebase.WIN ? score : result == Tablebase.LOSS ? -score : 0;
+    }
+
+    /**
+     * @return true if the current iteration can be stopped and the stop signal, or
+     *         the ponder search's, has been set
+     */
+    private boolean isStopped(){
+        AtomicBoolean stop = owner.stopSignal;
+        AtomicBoolean ponder = owner.ponderSignal;
+        return stoppable && ((stop != null && stop.get()) || (ponder != null && ponder.get()));
+    }
+
+    /**
+     * The negamax form of {@link minimax}: every node maximises the score for the
+     * side to move, which is the negation of the score for the other side, so one
+     * loop serves both players.
+     * 
+     * Principal variation search: the first move, most likely the best given the
+     * move ordering, is searched with the full window. Every other move is searched
+     * with a null window (alpha, alpha + 1), which only proves whether it is better
+     * than alpha and prunes far more. Only a move which proves better is searched
+     * again with the full window to find its score.
+     * 
+     * Scores in the transposition table stay from the ai's point of view, as in
+     * {@link minimax}, so the two algorithms can share a table.
+     * 
+     * @param gs
+     *      The current gamestate of the negamax algorithm
+     * @param depth
+     *      The number of nodes remaing to traverse before stopping
+     * @param alpha
+     *      The score the side to move is already guaranteed elsewhere
+     * @param beta
+     *      The score the opponent is already guaranteed to hold the side to move to
+     * @param side
+     *      0 if the ai is to move, 1 if the opponent is
+     * 
+     * @return the score for the side to move, packed with the best column, see {@link pack}
+     */
+    private long negamax(Gamestate gs, int depth, int alpha, int beta, int side){
+        if ((++nodes & 255) == 0 && (System.nanoTime() > deadline || isStopped())){
+            throw SearchTimeoutException.INSTANCE;
+        }
+        if (isTerminal(gs) || depth == 0){
+            leafEvaluations++;
+            int score = getScore(gs, depth);
+            return pack(side == 0 ? score : -score, -1);
+        }
+
+        int ply = maxDepth - depth;
+        int alphaOrig = alpha;
+        int betaOrig = beta;
+        long hash = gs.getCanonicalHash(); //a board and its mirror share an entry
+        long entry = tt.probe(hash);
+        int ttColumn = -1;
+        if (entry != TranspositionTable.MISS){
+            ttHits++;
+            ttColumn = tableColumn(gs, entry);
+            if (TranspositionTable.depth(entry) >= depth){
+                int ttScore = fromTableScore(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (side == 1){
+                    ttScore = -ttScore;
+                    bound = flipBound(bound);
+                }
+                if (bound == TranspositionTable.EXACT){
+                    return pack(ttScore, ttColumn);
+                }
+                else if (bound == TranspositionTable.LOWER_BOUND){
+                    alpha = Math.max(alpha, ttScore);
+                }
+                else {
+                    beta = Math.min(beta, ttScore);
+                }
+                if (beta <= alpha){
+                    return pack(ttScore, ttColumn);
+                }
+            }
+        }
+        int result = probeTablebase(gs, ply);
+        if (result != Tablebase.NOT_FOUND){
+            return pack(tablebaseScore(result, gs, ply), ttColumn);
+        }
+        if (ply == 0 && pvColumn >= 0){
+            ttColumn = pvColumn; //the previous iteration's best move
+        }
+
+        char moveColour = side == 0 ? colour : opColour;
+        int winning = gs.getWinningColumns(moveColour);
+        if (winning != 0){
+            return pack(WIN_SCORE - (ply + 1), Integer.numberOfTrailingZeros(winning)); //the win one move from here
+        }
+
+        int count = orderMoves(gs, ply, side == 0, ttColumn, gs.getNonLosingColumns(moveColour));
+        int[] moves = moveBuffer[ply];
+        int bestEval = -INFINITY;
+        int bestMove = -1;
+        for (int i = 0; i < count; i++){
+            int column = moves[i];
+
+            int eval;
+            gs.placeCounter(column, moveColour);
+            try {
+                if (i == 0){
+                    eval = -score(negamax(gs, depth-1, -beta, -alpha, 1 - side));
+                }
+                else {
+                    eval = -score(negamax(gs, depth-1, -alpha-1, -alpha, 1 - side));
+                    if (eval > alpha && eval < beta){
+                        eval = -score(negamax(gs, depth-1, -beta, -alpha, 1 - side)); //better than alpha, find by how much
+                    }
+                }
+            }
+            finally {
+                gs.unplaceCounter(column); //also restores the gamestate when the search is aborted
+            }
+
+            if (eval > bestEval){
+                bestEval = eval;
+                bestMove = column;
+            }
+
+            alpha = Math.max(alpha, eval);
+            if (beta <= alpha){
+                orderer.recordCutoff(ply, side, column, gs.getNextRow(column), depth, i);
+                break;
+            }
+        }
+
+        int bound = bestEval <= alphaOrig ? TranspositionTable.UPPER_BOUND
+            : bestEval >= betaOrig ? TranspositionTable.LOWER_BOUND
+            : TranspositionTable.EXACT;
+        int aiScore = bestEval;
+        if (side == 1){
+            aiScore = -aiScore;
+            bound = flipBound(bound);
+        }
+        tt.store(hash, toTableScore(aiScore, ply), depth, bound,
+            gs.isMirrored() ? gs.mirrorColumn(bestMove) : bestMove);
+        return pack(bestEval, bestMove);
+    }
+
+    /**
+     * @param bound
+     *      A bound on a score for one side
+     * @return the bound on the negated score for the other side, lower bounds becoming upper
+     */
+    private static int flipBound(int bound){
+        return bound == TranspositionTable.LOWER_BOUND ? TranspositionTable.UPPER_BOUND
+            : bound == TranspositionTable.UPPER_BOUND ? TranspositionTable.LOWER_BOUND
+            : bound;
+    }
+
+    /**
+     * Packs a score and column into a long, so minimax can return both without allocating.
+     * @param score
+     *      The score, in the upper 32 bits
+     * @param column
+     *      The column, or -1 for none, in the lower 32 bits
+     * @return the packed score and column
+     */
+    private static long pack(int score, int column){
+        return ((long) score << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    private static int score(long packed){
+        return (int) (packed >> 32);
+    }
+
+    private static int column(long packed){
+        return (int) packed;
+    }
+
+    /**
+     * Scores are offset by the depth they are found at from the root, so they are
+     * stored relative to the gamestate itself and can be reused from any depth.
+     * Scores favouring the ai shrink with depth, wins for the opponent grow.
+     * @param score
+     *      The score relative to the root of the search
+     * @param ply
+     *      The number of moves from the root to the stored gamestate
+     * @return the score relative to the stored gamestate
+     */
+    private static int toTableScore(int score, int ply){
+        return score < -WIN_SCORE / 2 ? score - ply : score + ply;
+    }
+
+    /**
+     * The reverse of {@link toTableScore}
+     * @param score
+     *      The score relative to the stored gamestate
+     * @param ply
+     *      The number of moves from the root to the stored gamestate
+     * @return the score relative to the root of the search
+     */
+    private static int fromTableScore(int score, int ply){
+        return score < -WIN_SCORE / 2 ? score + ply : score - ply;
+    }
+
+    /**
+     * Fills the move buffer for the ply with the playable columns worth searching, sorted by the
+     * move orderer to help maximise the amount of pruning in alpha beta pruning
+     * in minimax. Sorts in place with an insertion sort, best first.
      *
      * @param gs
      *      The current gamestate of the minimax algorithm
+     * @param ply
+     *      The number of moves from the root, selecting the buffer to fill
      * @param isMaximiser
      *      Indicates Whether the current 'player' is the maximiser or minimiser
+     * @param ttColumn
+     *      The best column from the transposition table, or -1 if there is none
+     * @param nonLosing
+     *      Bitmask of the columns which don't let the other player win next turn,
+     *      the only ones searched unless there are none, when every move loses
      * 
-     * @return An ArrayList of the sorted possible moves.
+     * @return the number of moves in the buffer
      */
-    private List<Move> getShallowSearchColumns(Gamestate gs, boolean isMaximiser){
-        char curColour = isMaximiser ? colour : opColour;
-        
-        return gs.getPossibleMoves().stream()
-            .peek(i -> {
-                gs.placeCounter(i.getColumn(), curColour);
-                i.setScore( getScore(gs, 0) * (isMaximiser ? 1 : -1) ); 
-                gs.unplaceCounter(i.getColumn());    
-            }).sorted()
-            .collect(Collectors.toList());
+    private int orderMoves(Gamestate gs, int ply, boolean isMaximiser, int ttColumn, int nonLosing){
+        int side = isMaximiser ? 0 : 1;
+        int[] moves = moveBuffer[ply];
+        int[] scores = moveScores[ply];
+        int count = 0;
+        for (int column = 0; column < numColumns; column++){
+            if (!gs.canPlay(column) || (nonLosing != 0 && (nonLosing & (1 << column)) == 0)){
+                continue;
+            }
+            int score = orderer.score(ply, side, column, gs.getNextRow(column), ttColumn);
+
+            int i = count++;
+            for (; i > 0 && scores[i-1] < score; i--){
+                moves[i] = moves[i-1];
+                scores[i] = scores[i-1];
+            }
+            moves[i] = column;
+            scores[i] = score;
+        }
+        return count;
     }
 
     /**
@@ -153,171 +1349,37 @@ public class HardAI extends Player{
      *      The remaining depth in the minimax function until it stops searching
      * @return int representing the score of the current board
      */
-    private int getScore(Gamestate gs, int depthRemaining){
+    int getScore(Gamestate gs, int depthRemaining){
         int score = 0;
-        char[][] board = gs.getBoard();
         int depth = this.maxDepth - depthRemaining;
 
         if (gs.isWin(colour)){
-            score = Integer.MAX_VALUE - depth;
+            score = WIN_SCORE - depth;
         }
         else if (gs.isWin(opColour)){
-            score = Integer.MIN_VALUE + depth;
+            score = -WIN_SCORE + depth;
         }
         else if (gs.isFull()){
             score = 0;
         }
         else {
-            score += scoreMiddleColumn(board, colour); //favour playing in the centre
-            score += scoreHorizontal(board, colour);
-            score += scoreVertical(board, colour);
-            score += scoreDiaganol(board, colour);
-
+            score += gs.getHeuristicScore(colour); //see Evaluator, kept up to date by the gamestate
             score -= depth;
         }
         return score;
     }
 
     /**
-     * Used to make the ai favour playing in the middle column.
-     * By increasing the score for each of the given colour found
-     * in the middle column.
-     * @param board
-     *      The current board for which to score
-     * @param colour
-     *      The colour that is being scored
-     * @return int for the score given to the passed paramaters
-     */
-    private int scoreMiddleColumn(char[][] board, char colour){
-        return IntStream.range(0, board[0].length)
-            .map(row -> board[3][row] == colour ? 3 : 0)
-            .sum();
-    }
-
-    /**
-     * Loops through all possible horizontal blocks of four on the board, 
-     * numerates the number of each colour found within said block and 
-     * and accumulates the horizontal score via evauateScore
-     * @param board
-     *      The current board to score
-     * @param colour
-     *      The colour to score positively
-     * @return int representing the score of the given board in favour of the given colour
-     */
-    private int scoreHorizontal(char[][] board, char colour){
-        int score = 0;
-
-        for(int row=0; row<board[0].length; row++){
-            for (int col=0; col<board.length-3; col++){ 
-                int colourCount = 0;
-                int emptyCount = 0;
-                for (int i=0; i<4; i++){
-                    if (board[col+i][row] == colour){
-                        colourCount++;
-                    } else if (board[col+i][row] == ' '){
-                        emptyCount++;
-                    }
-                }
-                score += evaluateScore(colourCount, emptyCount);
-            }
-        }
-        return score;
-    }
-
-    /**
-     * Loops through all possible vertical blocks of four on the board, 
-     * numerates the number of each colour found within said block and 
-     * and accumulates the vertical score via evauateScore
-     * @param board
-     *      The current board to score
-     * @param colour
-     *      The colour to score positively
-     * @return int representing the score of the given board in favour of the given colour
-     */
-    private int scoreVertical(char[][] board, char colour){
-        int score = 0;
-
-        for(int row=0; row<board[0].length-3; row++){
-            for (int col=0; col<board.length; col++){
-                int colourCount = 0;
-                int emptyCount = 0;
-                for (int i=0; i<4; i++){
-                    if (board[col][row+i] == colour){
-                        colourCount++;
-                    } else if (board[col][row+i] == ' '){
-                        emptyCount++;
-                    }
-                }
-                score += evaluateScore(colourCount, emptyCount);
-            }
-        }
-        return score;
-    }
-
-    /**
-     * Loops through all possible diaganol blocks of four on the board, 
-     * numerates the number of each colour found within said block and 
-     * and accumulates the diaganol score via evauateScore
-     * @param board
-     *      The current board to score
-     * @param colour
-     *      The colour to score positively
-     * @return int representing the score of the given board in favour of the given colour
+     * Thrown through the search when the deadline passes or it is stopped, unwinding back to
+     * {@link iterativeDeepening}. A single instance without a stack trace is
+     * reused, as it is only used for control flow.
      */
-    private int scoreDiaganol(char[][] board, char colour){
-        int score = 0;
-
-        for(int row=0; row<board[0].length-3; row++){
-            for (int col=0; col<board.length-3; col++){
-                int colourCount = 0;
-                int emptyCount = 0;
-                for (int i=0; i<4; i++){
-                    if (board[col+i][row+i] == colour){
-                        colourCount++;
-                    } else if (board[col+i][row+i] == ' '){
-                        emptyCount++;
-                    }
-                }
-                score += evaluateScore(colourCount, emptyCount);
-            }
-        }
-        for(int row=0; row<board[0].length-3; row++){
-            for (int col=0; col<board.length-3; col++){
-                int colourCount = 0;
-                int emptyCount = 0;
-                for (int i=0; i<4; i++){
-                    if (board[col+i][row+3-i] == colour){
-                        colourCount++;
-                    } else if (board[col+i][row+3-i] == ' '){
-                        emptyCount++;
-                    }
-                }
-                score += evaluateScore(colourCount, emptyCount);
-            }
-        }
-        return score;
-    }
+    private static class SearchTimeoutException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        static final SearchTimeoutException INSTANCE = new SearchTimeoutException();
 
-    /**
-     * Scores a given block of four spaces on the board, via the counts of each 
-     * colour within that block passed to it.
-     * @param colourCount
-     *      The number of the positive scoring colour found in a given block of four
-     * @param emptyCount
-     *      The number of empty spaces found in a given block of four
-     * @return int representing the score depending upon the numbers of each colour found
-     */
-    private int evaluateScore(int colourCount, int emptyCount){
-        int score = 0;
-        if (colourCount==3 && emptyCount==1){
-            score += 5;
+        private SearchTimeoutException(){
+            super(null, null, false, false);
         }
-        else if (colourCount==2 && emptyCount==2){
-            score += 2;
-        }
-        else if (colourCount==0 && emptyCount==1){
-            score -= 0;
-        }
-        return score;
     }
 }
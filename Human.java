@@ -25,16 +25,17 @@ public class Human extends Player{
      */
     public int getInput(Gamestate gamestate){
         List<Integer> possibleColumns = gamestate.getPossibleColumns();
+        int numColumns = gamestate.getWidth();
 		String userInput = null;
         int move = 0;
 		
-        while(move < 1 || 7 < move){
+        while(move < 1 || numColumns < move){
             try{
                 System.out.print("> ");
                 userInput = input.readLine();
                 move = Integer.parseInt(userInput);
                 
-                if (move < 1 || move > 7){
+                if (move < 1 || move > numColumns){
                     throw new IndexOutOfBoundsException("Index out of range!");
                 }
                 else if (!possibleColumns.contains(Integer.valueOf(move-1))){
@@ -48,7 +49,7 @@ public class Human extends Player{
                 System.out.println("Please input an integer.");
             }
             catch(IndexOutOfBoundsException e){
-                System.out.println("Please input an integer between 1 and 7.");
+                System.out.println("Please input an integer between 1 and " + numColumns + ".");
             }
             catch(IllegalArgumentException e){
                 System.out.printf("Column %d is full, please input a different column.\n", move);
@@ -0,0 +1,484 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Monte Carlo tree search ai, an alternative to the hard ai's minimax needing no
+ * heuristic: moves are judged by the results of games played out from them.
+ *
+ * Uses UCT, each iteration walking down the tree picking the child with the best
+ * win rate plus an exploration bonus for little visited children, expanding the
+ * leaf reached, playing the game out from there and adding the result to every
+ * node on the way back up. The move played is the root child visited most.
+ *
+ * Playouts run on bitboards (see {@link BitboardGamestate}) and are lightly guided:
+ * a player always takes a win, never plays a move letting the other win next turn
+ * if it has another, and otherwise moves at random. Nodes only get the children the
+ * same rules allow.
+ *
+ * Nodes are kept in primitive arrays (see {@link NodePool}) so searching allocates
+ * nothing. The part of the tree below the position reached after the ai's move and
+ * the opponent's reply is kept for the next turn.
+ *
+ * With multiple threads searches root parallel, each thread growing its own tree,
+ * the visits of the root children being summed over the trees at the end.
+ */
+public class MctsAI extends Player {
+    private static final int NODE_CAPACITY = 1 << 19; //nodes per tree, the tree stops growing when full
+    private static final double EXPLORATION = Math.sqrt(2);
+    private static final int[] COLUMN_ORDER = new int[] {3, 2, 4, 1, 5, 0, 6}; //children centre first
+
+    private char opColour;
+    private long playouts = 100000; //per move, over every thread, used when there is no time budget
+    private long timeBudgetMillis; //0 to search a fixed number of playouts instead
+    private Tree[] trees = new Tree[] {new Tree(1)};
+    private ExecutorService pool; //null when searching on the calling thread
+
+    public MctsAI(char colour, char opColour){
+        name = "MCTS AI";
+        this.colour = colour;
+        this.opColour = opColour;
+    }
+
+    /**
+     * @param playouts
+     *      The number of playouts per move, when there is no time budget
+     */
+    public void setPlayouts(long playouts){
+        this.playouts = playouts;
+    }
+
+    /**
+     * @param timeBudgetMillis
+     *      The time allowed per move, or 0 to search a fixed number of playouts instead
+     */
+    public void setTimeBudget(long timeBudgetMillis){
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    /**
+     * @param threads
+     *      The number of trees to search at once, each on its own thread
+     */
+    public void setThreads(int threads){
+        if (pool != null){
+            pool.shutdownNow();
+            pool = null;
+        }
+        trees = new Tree[Math.max(threads, 1)];
+        for (int i = 0; i < trees.length; i++){
+            trees[i] = new Tree(i + 1);
+        }
+        if (threads > 1){
+            pool = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "MctsAI search");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Shuts down the search threads, leaving a single tree searched on the calling thread.
+     */
+    @Override
+    public void shutdown(){
+        setThreads(1);
+    }
+
+    /**
+     * Forgets the trees kept from previous moves.
+     */
+    @Override
+    public void reset(){
+        for (Tree tree : trees){
+            tree.clear();
+        }
+    }
+
+    /**
+     * Finds the best move for the AI to play by Monte Carlo tree search,
+     * for a number of playouts or until the time budget runs out.
+     * @param gs
+     *      The current gamestate of the runtime program
+     * @return int representing the column of the best move
+     * @throws IllegalArgumentException if the board isn't the standard size
+     */
+    public int getInput(Gamestate gs){
+        if (!gs.isStandardSize()){
+            throw new IllegalArgumentException("The Monte Carlo ai only plays on the standard board");
+        }
+        long startTime = System.nanoTime();
+        long current = Solver.toBitboard(gs, colour);
+        long mask = Solver.toBitboard(gs, ' ') ^ BitboardGamestate.BOARD_MASK;
+        long deadline = timeBudgetMillis > 0 ? startTime + timeBudgetMillis * 1000000 : Long.MAX_VALUE;
+        long treePlayouts = timeBudgetMillis > 0 ? Long.MAX_VALUE : Math.max(playouts / trees.length, 1);
+
+        if (pool == null){
+            trees[0].search(current, mask, treePlayouts, deadline);
+        }
+        else {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (Tree tree : trees){
+                tasks.add(() -> {
+                    tree.search(current, mask, treePlayouts, deadline);
+                    return null;
+                });
+            }
+            try {
+                for (Future<Void> future : pool.invokeAll(tasks)){
+                    future.get();
+                }
+            }
+            catch (ExecutionException e){
+                throw new IllegalStateException(e.getCause());
+            }
+            catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        long[] visits = new long[BitboardGamestate.WIDTH];
+        long[] scores = new long[BitboardGamestate.WIDTH];
+        long total = 0;
+        for (Tree tree : trees){
+            tree.addRootResults(visits, scores);
+        }
+        int bestMove = -1;
+        for (int column : COLUMN_ORDER){
+            total += visits[column];
+            if (visits[column] > 0 && (bestMove < 0 || visits[column] > visits[bestMove])){
+                bestMove = column;
+            }
+        }
+        for (Tree tree : trees){
+            tree.setLastMove(bestMove);
+        }
+
+        if (verbose){
+            float totalTime = (System.nanoTime() - startTime) / 1000000000f;
+            System.out.printf("Ai played %d, from %d playouts, winning %.1f%% of them, in ", (bestMove+1), total,
+                50.0 * scores[bestMove] / visits[bestMove]);
+            System.out.print(totalTime + "seconds\n");
+        }
+        return bestMove;
+    }
+
+    /**
+     * The tree of one search thread, with its own node pools, random numbers and buffers.
+     */
+    private static class Tree {
+        private NodePool nodes = new NodePool(NODE_CAPACITY);
+        private NodePool spare = new NodePool(NODE_CAPACITY); //the kept subtree is copied here between moves
+        private int[] path = new int[BitboardGamestate.WIDTH * BitboardGamestate.HEIGHT + 1];
+        private long random;
+
+        //The position of the root, the player to move being the ai, and the ai's last move
+        private long rootCurrent;
+        private long rootMask;
+        private int lastMove = -1;
+
+        Tree(long seed){
+            random = seed * 0x9E3779B97F4A7C15L ^ System.nanoTime();
+            if (random == 0){
+                random = 1;
+            }
+        }
+
+        void clear(){
+            nodes.clear();
+            lastMove = -1;
+        }
+
+        void setLastMove(int column){
+            lastMove = column;
+        }
+
+        /**
+         * Runs playouts from the position until either limit is reached, reusing the
+         * subtree of the position if it follows on from the last search.
+         */
+        void search(long current, long mask, long playouts, long deadline){
+            reuse(current, mask);
+            rootCurrent = current;
+            rootMask = mask;
+            for (long i = 0; i < playouts; i++){
+                if ((i & 63) == 0 && i > 0 && System.nanoTime() > deadline){
+                    break;
+                }
+                iterate();
+            }
+        }
+
+        /**
+         * Keeps the subtree of the new root if it is the old root after the ai's last
+         * move and a reply, otherwise starts a new tree.
+         */
+        private void reuse(long current, long mask){
+            int node = -1;
+            if (nodes.size > 0 && lastMove >= 0){
+                long ourMove = BitboardGamestate.playableCells(rootMask) & BitboardGamestate.columnMask(lastMove);
+                long played = rootMask | ourMove;
+                long reply = mask ^ played;
+                if (current == (rootCurrent | ourMove) && (mask & played) == played && Long.bitCount(reply) == 1){
+                    int child = nodes.findChild(0, lastMove);
+                    if (child >= 0){
+                        node = nodes.findChild(child, Long.numberOfTrailingZeros(reply) / BitboardGamestate.COLUMN_BITS);
+                    }
+                }
+            }
+            if (node > 0){
+                spare.copySubtree(nodes, node);
+                NodePool swap = nodes;
+                nodes = spare;
+                spare = swap;
+            }
+            else {
+                nodes.clear();
+                nodes.add((byte) -1);
+            }
+        }
+
+        /**
+         * One UCT iteration: select, expand, play out and back up.
+         */
+        private void iterate(){
+            long current = rootCurrent;
+            long mask = rootMask;
+            int length = 0;
+            int node = 0;
+            path[length++] = node;
+            while (nodes.terminal[node] == NodePool.NOT_TERMINAL){
+                if (nodes.childCount[node] == 0){
+                    if (nodes.visits[node] == 0 && node != 0){
+                        break; //play out from a new leaf before expanding it
+                    }
+                    if (!nodes.expand(node, current, mask)){
+                        break; //the pool is full
+                    }
+                }
+                node = selectChild(node);
+                long move = BitboardGamestate.playableCells(mask) & BitboardGamestate.columnMask(nodes.column[node]);
+                long mover = current | move;
+                current ^= mask;
+                mask |= move;
+                path[length++] = node;
+                if (nodes.visits[node] == 0){
+                    if (BitboardGamestate.isAlignment(mover)){
+                        nodes.terminal[node] = NodePool.WIN;
+                    }
+                    else if (mask == BitboardGamestate.BOARD_MASK){
+                        nodes.terminal[node] = NodePool.DRAW;
+                    }
+                }
+            }
+
+            //the result for the player who moved into the last node, 2 for a win, 1 for a draw
+            int result;
+            if (nodes.terminal[node] == NodePool.WIN){
+                result = 2;
+            }
+            else if (nodes.terminal[node] == NodePool.DRAW){
+                result = 1;
+            }
+            else {
+                result = 1 - playout(current, mask); //playout is for the player to move
+            }
+            for (int i = length - 1; i >= 0; i--){
+                nodes.visits[path[i]]++;
+                nodes.scores[path[i]] += result;
+                result = 2 - result;
+            }
+        }
+
+        /**
+         * @return the child with the highest UCT value, unvisited children first
+         */
+        private int selectChild(int node){
+            int first = nodes.firstChild[node];
+            int count = nodes.childCount[node];
+            double logVisits = Math.log(nodes.visits[node]);
+            int best = first;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int child = first; child < first + count; child++){
+                int visits = nodes.visits[child];
+                if (visits == 0){
+                    return child;
+                }
+                double value = nodes.scores[child] / (2.0 * visits) + EXPLORATION * Math.sqrt(logVisits / visits);
+                if (value > bestValue){
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Plays the game out with lightly guided random moves.
+         * @return 1 if the player to move wins, -1 if they lose, 0 for a draw
+         */
+        private int playout(long current, long mask){
+            int sign = 1;
+            while (mask != BitboardGamestate.BOARD_MASK){
+                long possible = BitboardGamestate.playableCells(mask);
+                if ((BitboardGamestate.winningCells(current, mask) & possible) != 0){
+                    return sign;
+                }
+                long candidates = BitboardGamestate.nonLosingCells(current, mask);
+                if (candidates == 0){
+                    return -sign; //every move lets the other player win
+                }
+                long move = randomCell(candidates);
+                current ^= mask;
+                mask |= move;
+                sign = -sign;
+            }
+            return 0;
+        }
+
+        /**
+         * @return one of the cells, chosen uniformly with a xorshift generator
+         */
+        private long randomCell(long cells){
+            random ^= random << 13;
+            random ^= random >>> 7;
+            random ^= random << 17;
+            int skip = (int) ((random >>> 1) % Long.bitCount(cells));
+            for (int i = 0; i < skip; i++){
+                cells &= cells - 1; //remove the lowest cell
+            }
+            return Long.lowestOneBit(cells);
+        }
+
+        void addRootResults(long[] visits, long[] scores){
+            int first = nodes.firstChild[0];
+            for (int child = first; child < first + nodes.childCount[0]; child++){
+                visits[nodes.column[child]] += nodes.visits[child];
+                scores[nodes.column[child]] += nodes.scores[child];
+            }
+        }
+    }
+
+    /**
+     * The nodes of a tree as parallel arrays, indexed by node, the root being node 0.
+     * A node's children are stored together, so a node needs only its first child's
+     * index and the number of children. Scores are 2 for each win and 1 for each draw,
+     * for the player who made the move into the node.
+     */
+    private static class NodePool {
+        static final byte NOT_TERMINAL = 0;
+        static final byte WIN = 1; //won by the move into the node
+        static final byte DRAW = 2;
+
+        final int[] visits;
+        final int[] scores;
+        final int[] firstChild;
+        final byte[] childCount;
+        final byte[] column; //of the move into the node
+        final byte[] terminal;
+        private final int[] origin; //used when copying, the node each copied node came from
+        int size;
+
+        NodePool(int capacity){
+            visits = new int[capacity];
+            scores = new int[capacity];
+            firstChild = new int[capacity];
+            childCount = new byte[capacity];
+            column = new byte[capacity];
+            terminal = new byte[capacity];
+            origin = new int[capacity];
+        }
+
+        void clear(){
+            size = 0;
+        }
+
+        /**
+         * @return the index of a new node for the move in the column
+         */
+        int add(byte moveColumn){
+            int node = size++;
+            visits[node] = 0;
+            scores[node] = 0;
+            childCount[node] = 0;
+            column[node] = moveColumn;
+            terminal[node] = NOT_TERMINAL;
+            return node;
+        }
+
+        /**
+         * Adds the children of a node: the winning move if there is one, otherwise
+         * the moves not letting the other player win next turn, or every move if all do.
+         * @return false if there is no room for the children
+         */
+        boolean expand(int node, long current, long mask){
+            long possible = BitboardGamestate.playableCells(mask);
+            long moves = BitboardGamestate.winningCells(current, mask) & possible;
+            if (moves == 0){
+                moves = BitboardGamestate.nonLosingCells(current, mask);
+            }
+            if (moves == 0){
+                moves = possible;
+            }
+            if (size + BitboardGamestate.WIDTH > visits.length){
+                return false;
+            }
+            firstChild[node] = size;
+            int count = 0;
+            for (int col : COLUMN_ORDER){
+                if ((moves & BitboardGamestate.columnMask(col)) != 0){
+                    add((byte) col);
+                    count++;
+                }
+            }
+            childCount[node] = (byte) count;
+            return true;
+        }
+
+        /**
+         * @return the child of the node for the move in the column, or -1 if there isn't one
+         */
+        int findChild(int node, int moveColumn){
+            for (int child = firstChild[node]; child < firstChild[node] + childCount[node]; child++){
+                if (column[child] == moveColumn){
+                    return child;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Replaces this pool's nodes with a copy of the subtree below a node of another
+         * pool, breadth first so each node's children stay together.
+         */
+        void copySubtree(NodePool from, int root){
+            clear();
+            copyNode(from, root);
+            for (int node = 0; node < size; node++){
+                int old = origin[node];
+                int count = from.childCount[old];
+                if (count > 0){
+                    firstChild[node] = size;
+                    for (int child = from.firstChild[old]; child < from.firstChild[old] + count; child++){
+                        copyNode(from, child);
+                    }
+                }
+            }
+        }
+
+        private void copyNode(NodePool from, int old){
+            int node = size++;
+            origin[node] = old;
+            visits[node] = from.visits[old];
+            scores[node] = from.scores[old];
+            childCount[node] = from.childCount[old];
+            column[node] = from.column[old];
+            terminal[node] = from.terminal[old];
+        }
+    }
+}
@@ -0,0 +1,185 @@
+import java.util.Arrays;
+
+/**
+ * Move ordering for the hard ai's search, putting the moves most likely to cause
+ * a cutoff first so alpha/beta pruning can skip as much of the tree as possible.
+ *
+ * Moves are tried in order of:
+ * the best move from the transposition table or previous iteration,
+ * the two killer moves of the ply (the latest moves to cause a cutoff at that depth of the tree),
+ * then the history score, how much the move has caused cutoffs anywhere in the tree,
+ * indexed by the side to move and the cell the counter lands in,
+ * with columns nearer the centre first when nothing else separates them.
+ *
+ * Also counts the cutoffs caused by the first, second... move tried, how often
+ * the first move causes the cutoff being the measure of how good the ordering is.
+ */
+public class MoveOrderer {
+    private static final int BEST_MOVE_SCORE = 1 << 30;
+    private static final int[] KILLER_SCORES = new int[] {1 << 29, 1 << 28};
+    private static final int HISTORY_LIMIT = 1 << 20; //halve the history if it gets this high
+
+    private final int numColumns;
+    //Tie breaking, columns from the centre outwards score from numColumns - 1 down to 0
+    private final int[] centreScores;
+
+    private int[][] killers; //[ply][slot], -1 for none
+    private int[][][] history; //[side][column][row]
+
+    private long[] cutoffsByMoveIndex;
+
+    /**
+     * Move ordering for the standard 7 by 6 board.
+     * @param maxPly
+     *      The most moves from the root the search can reach
+     */
+    public MoveOrderer(int maxPly){
+        this(maxPly, Gamestate.STANDARD_WIDTH, Gamestate.STANDARD_HEIGHT);
+    }
+
+    /**
+     * @param maxPly
+     *      The most moves from the root the search can reach
+     * @param width
+     *      The number of columns of the board
+     * @param height
+     *      The number of rows of the board
+     */
+    public MoveOrderer(int maxPly, int width, int height){
+        numColumns = width;
+        killers = new int[maxPly + 1][2];
+        history = new int[2][width][height];
+        cutoffsByMoveIndex = new long[width];
+        centreScores = new int[width];
+        int centre = (width - 1) / 2;
+        for (int col = 0; col < width; col++){
+            int distance = Math.abs(col - centre);
+            centreScores[col] = col > centre ? width - 2 * distance : width - 1 - 2 * distance; //right first
+        }
+        clearKillers();
+    }
+
+    /**
+     * Called at the start of each move, the killers are for plies from the old root
+     * so are forgotten, and the history is halved so it favours the current position.
+     */
+    public void newSearch(){
+        clearKillers();
+        ageHistory();
+    }
+
+    /**
+     * Scores a move for sorting, higher scores to be searched first.
+     * @param ply
+     *      The number of moves from the root
+     * @param side
+     *      0 if the ai is to move, 1 if the opponent is
+     * @param column
+     *      The column of the move
+     * @param row
+     *      The row the counter lands in
+     * @param bestColumn
+     *      The best column from the transposition table or previous iteration, or -1
+     * @return the ordering score of the move
+     */
+    public int score(int ply, int side, int column, int row, int bestColumn){
+        if (column == bestColumn){
+            return BEST_MOVE_SCORE;
+        }
+        for (int slot = 0; slot < 2; slot++){
+            if (killers[ply][slot] == column){
+                return KILLER_SCORES[slot];
+            }
+        }
+        return history[side][column][row] * numColumns + centreScores[column];
+    }
+
+    /**
+     * Records the move which caused a cutoff, as a killer of its ply and in the history.
+     * @param ply
+     *      The number of moves from the root
+     * @param side
+     *      0 if the ai is to move, 1 if the opponent is
+     * @param column
+     *      The column of the move
+     * @param row
+     *      The row the counter lands in
+     * @param depth
+     *      The depth remaining below the move, cutoffs higher in the tree count for more
+     * @param moveIndex
+     *      The index of the move in the order searched
+     */
+    public void recordCutoff(int ply, int side, int column, int row, int depth, int moveIndex){
+        cutoffsByMoveIndex[moveIndex]++;
+        if (killers[ply][0] != column){
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = column;
+        }
+        history[side][column][row] += depth * depth;
+        if (history[side][column][row] > HISTORY_LIMIT){
+            ageHistory();
+        }
+    }
+
+    /**
+     * @return the number of cutoffs since the counts were reset
+     */
+    public long getCutoffs(){
+        long cutoffs = 0;
+        for (long count : cutoffsByMoveIndex){
+            cutoffs += count;
+        }
+        return cutoffs;
+    }
+
+    /**
+     * @return the number of cutoffs caused by the first move tried since the counts were reset
+     */
+    public long getFirstMoveCutoffs(){
+        return cutoffsByMoveIndex[0];
+    }
+
+    /**
+     * @param counts
+     *      Array to add the number of cutoffs caused by the move at each index
+     *      in the order searched since the counts were reset to
+     */
+    public void addCutoffsByMoveIndex(long[] counts){
+        for (int i = 0; i < numColumns; i++){
+            counts[i] += cutoffsByMoveIndex[i];
+        }
+    }
+
+    public void resetCounts(){
+        Arrays.fill(cutoffsByMoveIndex, 0);
+    }
+
+    /**
+     * Forgets everything learnt, the killers, history and counts.
+     */
+    public void reset(){
+        clearKillers();
+        for (int[][] side : history){
+            for (int[] column : side){
+                Arrays.fill(column, 0);
+            }
+        }
+        resetCounts();
+    }
+
+    private void clearKillers(){
+        for (int[] ply : killers){
+            Arrays.fill(ply, -1);
+        }
+    }
+
+    private void ageHistory(){
+        for (int[][] side : history){
+            for (int[] column : side){
+                for (int row = 0; row < column.length; row++){
+                    column[row] /= 2;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP service returning the hard ai's move for any position, so the engine can be
+ * run behind a service rather than the console game.
+ *
+ * GET /move?moves=4453&depth=7
+ * GET /move?board=......./......./......./......./...y.../..rr...&movetime=200
+ *
+ * The position is given as moves from the empty board, columns numbered from 1, or as the
+ * board, six rows of seven cells from the top, r and y for counters and . for empty cells,
+ * rows optionally separated by /. The search is to a depth (default 7) or for a time in
+ * milliseconds. Replies with JSON: the column to play (numbered from 1), score, depth,
+ * nodes, nodes/s, time and principal variation, or an error with status 400.
+ *
+ * Requests are handled on virtual threads when the JVM has them, otherwise on a cached
+ * thread pool, and wait for a search executor with a thread per core, each thread with
+ * its own ais, so many concurrent games can't oversubscribe the cores. When the
+ * executor's queue is full requests are refused with status 503.
+ */
+public class MoveService {
+    private static final char[] COLOURS = new char[] {'r', 'y'};
+    private static final int DEFAULT_DEPTH = 7;
+    private static final int MAX_DEPTH = 42;
+    private static final long MAX_MOVE_TIME = 10000;
+
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+    private final ThreadPoolExecutor searchExecutor;
+
+    //Each search thread's ais, by colour index, created on first use
+    private final ThreadLocal<HardAI[]> ais = ThreadLocal.withInitial(() -> new HardAI[] {
+        newAI(COLOURS[0], COLOURS[1]), newAI(COLOURS[1], COLOURS[0])
+    });
+
+    /**
+     * @param port
+     *      The port to listen on, 0 for any free port
+     * @param searchThreads
+     *      The number of searches to run at once
+     * @param queueSize
+     *      The number of searches which can wait for a thread before requests are refused
+     * @throws IOException if the port can't be bound
+     */
+    public MoveService(int port, int searchThreads, int queueSize) throws IOException{
+        searchExecutor = new ThreadPoolExecutor(searchThreads, searchThreads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueSize), r -> {
+                Thread t = new Thread(r, "MoveService search");
+                t.setDaemon(true);
+                return t;
+            });
+        requestExecutor = newRequestExecutor();
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/move", this::handleMove);
+        server.setExecutor(requestExecutor);
+    }
+
+    public void start(){
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waiting up to a second for those being handled.
+     */
+    public void stop(){
+        server.stop(1);
+        requestExecutor.shutdownNow();
+        searchExecutor.shutdownNow();
+    }
+
+    /**
+     * @return the port being listened on
+     */
+    public int getPort(){
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return a virtual thread per task executor if the JVM has virtual threads,
+     *         found by reflection so the service still runs on older JVMs
+     */
+    private static ExecutorService newRequestExecutor(){
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e){
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "MoveService request");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    private static HardAI newAI(char colour, char opColour){
+        HardAI ai = new HardAI(colour, opColour);
+        ai.setVerbose(false);
+        return ai;
+    }
+
+    private void handleMove(HttpExchange exchange) throws IOException{
+        try {
+            if (!exchange.getRequestMethod().equals("GET")){
+                reply(exchange, 405, error("only GET is supported"));
+                return;
+            }
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            Gamestate gs = parsePosition(params);
+            if (gs.isWin(COLOURS[0]) || gs.isWin(COLOURS[1]) || gs.isFull()){
+                reply(exchange, 400, error("the game is already over"));
+                return;
+            }
+            int depth = params.containsKey("depth") ? Integer.parseInt(params.get("depth")) : DEFAULT_DEPTH;
+            long moveTime = params.containsKey("movetime") ? Long.parseLong(params.get("movetime")) : 0;
+            if (depth < 1 || depth > MAX_DEPTH || moveTime < 0 || moveTime > MAX_MOVE_TIME){
+                reply(exchange, 400, error("depth must be 1 to " + MAX_DEPTH + ", movetime 0 to " + MAX_MOVE_TIME));
+                return;
+            }
+
+            Future<SearchStats> search;
+            try {
+                search = searchExecutor.submit(() -> search(gs, depth, moveTime));
+            }
+            catch (RejectedExecutionException e){
+                reply(exchange, 503, error("too many searches waiting, try again later"));
+                return;
+            }
+            reply(exchange, 200, toJson(search.get()));
+        }
+        catch (IllegalArgumentException e){
+            reply(exchange, 400, error(e.getMessage()));
+        }
+        catch (ExecutionException e){
+            reply(exchange, 500, error("search failed: " + e.getCause()));
+        }
+        catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            reply(exchange, 503, error("shutting down"));
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Run on a search thread, with that thread's ai for the colour to play.
+     */
+    private SearchStats search(Gamestate gs, int depth, long moveTime){
+        HardAI ai = ais.get()[gs.getColourToPlay() == COLOURS[0] ? 0 : 1];
+        if (moveTime > 0){
+            return ai.searchIteratively(gs, gs.getEmptyCells(), moveTime, null);
+        }
+        ai.setSearchDepth(depth);
+        ai.setTimeBudget(0);
+        return ai.search(gs);
+    }
+
+    /**
+     * @param params
+     *      The query parameters, with either moves or board
+     * @return the gamestate they describe
+     * @throws IllegalArgumentException if the position isn't valid
+     */
+    static Gamestate parsePosition(Map<String, String> params){
+        Gamestate gs = new BitboardGamestate(COLOURS);
+        if (params.containsKey("moves")){
+            gs.playMoves(params.get("moves"));
+            return gs;
+        }
+        if (!params.containsKey("board")){
+            throw new IllegalArgumentException("moves or board is required");
+        }
+        String cells = params.get("board").replace("/", "");
+        if (cells.length() != 42){
+            throw new IllegalArgumentException("board must have 42 cells");
+        }
+        int[] counts = new int[2];
+        for (int col = 0; col < 7; col++){
+            boolean empty = false;
+            for (int row = 5; row >= 0; row--){ //from the bottom, as counters are dropped
+                char cell = cells.charAt(row * 7 + col);
+                if (cell == '.'){
+                    empty = true;
+                }
+                else if (cell != COLOURS[0] && cell != COLOURS[1]){
+                    throw new IllegalArgumentException("Invalid cell '" + cell + "' in board");
+                }
+                else if (empty){
+                    throw new IllegalArgumentException("Counter above an empty cell in column " + (col + 1));
+                }
+                else {
+                    gs.placeCounter(col, cell);
+                    counts[cell == COLOURS[0] ? 0 : 1]++;
+                }
+            }
+        }
+        if (counts[0] != counts[1] && counts[0] != counts[1] + 1){
+            throw new IllegalArgumentException("r moves first, so must have as many counters as y or one more");
+        }
+        return gs;
+    }
+
+    static Map<String, String> parseQuery(String query){
+        Map<String, String> params = new HashMap<>();
+        if (query == null){
+            return params;
+        }
+        for (String param : query.split("&")){
+            String[] keyValue = param.split("=", 2);
+            params.put(URLDecoder.decode(keyValue[0], StandardCharsets.UTF_8),
+                keyValue.length == 2 ? URLDecoder.decode(keyValue[1], StandardCharsets.UTF_8) : "");
+        }
+        return params;
+    }
+
+    private static String toJson(SearchStats stats){
+        return "{\"column\":" + (stats.getBestColumn() + 1)
+            + ",\"score\":" + stats.getScore()
+            + ",\"depth\":" + stats.getDepth()
+            + ",\"fromBook\":" + stats.isFromBook()
+            + ",\"nodes\":" + stats.getNodes()
+            + ",\"nps\":" + stats.getNodesPerSecond()
+            + ",\"timeMillis\":" + stats.getElapsedNanos() / 1000000
+            + ",\"pv\":\"" + stats.getPrincipalVariationString() + "\"}";
+    }
+
+    private static String error(String message){
+        return "{\"error\":\"" + message.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}";
+    }
+
+    private static void reply(HttpExchange exchange, int status, String json) throws IOException{
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()){
+            out.write(body);
+        }
+    }
+
+    /**
+     * Runs the service, optional args: port (default 8080), search threads
+     * (default one per core) and the search queue size (default 64).
+     */
+    public static void main(String[] args) throws IOException{
+        int port = args.length >= 1 ? Integer.parseInt(args[0]) : 8080;
+        int threads = args.length >= 2 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int queueSize = args.length >= 3 ? Integer.parseInt(args[2]) : 64;
+        MoveService service = new MoveService(port, threads, queueSize);
+        service.start();
+        System.out.printf("Listening on port %d with %d search threads\n", service.getPort(), threads);
+    }
+}
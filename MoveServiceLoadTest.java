@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load test client for {@link MoveService}, sending move requests for random positions
+ * from a number of concurrent clients and reporting the latency percentiles and throughput.
+ *
+ * Runs its own service on a free port unless given the url of one to test.
+ * First checks the service reads positions given as boards as it does the same
+ * positions given as moves, exiting with 1 if not.
+ */
+public class MoveServiceLoadTest {
+    private static final char[] COLOURS = new char[] {'r', 'y'};
+
+    /**
+     * Args (all optional): concurrent clients (default 16), requests (default 1000),
+     * search depth (default 7), service url (default a service run by the test).
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException{
+        int clients = args.length >= 1 ? Integer.parseInt(args[0]) : 16;
+        int requests = args.length >= 2 ? Integer.parseInt(args[1]) : 1000;
+        int depth = args.length >= 3 ? Integer.parseInt(args[2]) : 7;
+        MoveService service = null;
+        String url;
+        if (args.length >= 4){
+            url = args[3];
+        }
+        else {
+            service = new MoveService(0, Runtime.getRuntime().availableProcessors(), requests);
+            service.start();
+            url = "http://localhost:" + service.getPort();
+        }
+
+        Random random = new Random(1);
+        if (checkBoardPositions(random) != 0){
+            System.exit(1);
+        }
+
+        HttpClient client = HttpClient.newHttpClient();
+        List<URI> uris = new ArrayList<>();
+        for (int i = 0; i < requests; i++){
+            uris.add(URI.create(url + "/move?moves=" + randomPosition(random) + "&depth=" + depth));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        List<Callable<Long>> tasks = new ArrayList<>();
+        for (URI uri : uris){
+            tasks.add(() -> {
+                HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+                long startTime = System.nanoTime();
+                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                long latency = System.nanoTime() - startTime;
+                return response.statusCode() == 200 ? latency : -1;
+            });
+        }
+        long startTime = System.nanoTime();
+        List<Future<Long>> results = pool.invokeAll(tasks);
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        pool.shutdown();
+        if (service != null){
+            service.stop();
+        }
+
+        long[] latencies = new long[requests];
+        int ok = 0;
+        for (Future<Long> result : results){
+            long latency = result.get();
+            if (latency >= 0){
+                latencies[ok++] = latency;
+            }
+        }
+        latencies = Arrays.copyOf(latencies, ok);
+        Arrays.sort(latencies);
+
+        System.out.printf("%d requests from %d clients at depth %d, %d failed\n", requests, clients, depth, requests - ok);
+        if (ok > 0){
+            System.out.printf("p50 %.1fms, p90 %.1fms, p99 %.1fms, max %.1fms\n", percentile(latencies, 50),
+                percentile(latencies, 90), percentile(latencies, 99), latencies[ok - 1] / 1e6);
+        }
+        System.out.printf("%.1f seconds, %.1f requests/s\n", seconds, requests / seconds);
+    }
+
+    /**
+     * Parses random positions given as boards, and a board with y leftmost, checking each
+     * has the side to move and key of the same position given as moves, r moving first.
+     * @return the number of positions parsed wrongly
+     */
+    static int checkBoardPositions(Random random){
+        List<String> positions = new ArrayList<>(Arrays.asList("41", "4121")); //y in the first column
+        for (int i = 0; i < 100; i++){
+            positions.add(randomPosition(random));
+        }
+        int failures = 0;
+        for (String moves : positions){
+            Gamestate expected = new BitboardGamestate(COLOURS);
+            expected.playMoves(moves);
+            Map<String, String> params = new HashMap<>();
+            params.put("board", toBoard(expected));
+            Gamestate gs = MoveService.parsePosition(params);
+            if (gs.getColourToPlay() != expected.getColourToPlay() || gs.getPositionKey() != expected.getPositionKey()){
+                System.out.printf("MISMATCH for board %s: %c to move, expected %c after %s\n", params.get("board"),
+                    gs.getColourToPlay(), expected.getColourToPlay(), moves);
+                failures++;
+            }
+        }
+        System.out.printf("Board positions %s\n", failures == 0 ? "ok" : failures + " parsed wrongly");
+        return failures;
+    }
+
+    /**
+     * @return the gamestate as a board parameter, rows from the top separated by '/', '.' for empty
+     */
+    private static String toBoard(Gamestate gs){
+        StringBuilder board = new StringBuilder();
+        char[][] cells = gs.getBoard();
+        for (int row = 0; row < gs.getHeight(); row++){
+            if (row > 0){
+                board.append('/');
+            }
+            for (int col = 0; col < gs.getWidth(); col++){
+                board.append(cells[col][row] == ' ' ? '.' : cells[col][row]);
+            }
+        }
+        return board.toString();
+    }
+
+    /**
+     * @return the latency in milliseconds which the percentage of the sorted latencies are no greater than
+     */
+    private static double percentile(long[] sorted, double percent){
+        int index = (int) Math.ceil(percent / 100 * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+
+    /**
+     * @return 0 to 20 random moves from the empty board, neither winning nor filling it
+     */
+    private static String randomPosition(Random random){
+        Gamestate gs = new BitboardGamestate(COLOURS);
+        StringBuilder moves = new StringBuilder();
+        int length = random.nextInt(21);
+        for (int attempts = 0; moves.length() < length && attempts < 100; attempts++){
+            List<Integer> columns = gs.getPossibleColumns();
+            int column = columns.get(random.nextInt(columns.size()));
+            char colour = gs.getColourToPlay();
+            gs.placeCounter(column, colour);
+            if (gs.isWin(colour) || gs.isFull()){
+                gs.unplaceCounter(column);
+                continue;
+            }
+            moves.append(column + 1);
+        }
+        return moves.toString();
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * Gamestate for boards too big for a single bitboard (see {@link BitboardGamestate#fits}),
+ * such as 9x7, keeping a word per column per player instead, bit r being the cell r rows
+ * up from the bottom. Lines are found by anding neighbouring columns, shifting each a row
+ * further for the diagonals, rather than scanning the char board.
+ *
+ * The char board of the superclass is still kept up to date so that the ais
+ * and printing can use it unchanged.
+ */
+public class MultiwordGamestate extends Gamestate {
+    private long[][] columns; //[colourIndex][col]
+
+    /**
+     * @param colours
+     *      The chars used by the two players on the board, in order of play
+     * @param width
+     *      The number of columns
+     * @param height
+     *      The number of rows
+     * @param connect
+     *      The number of counters in a row needed to win
+     * @throws IllegalArgumentException if the dimensions are out of range
+     */
+    public MultiwordGamestate(char[] colours, int width, int height, int connect){
+        super(colours, width, height, connect);
+        columns = new long[2][width];
+    }
+
+    /**
+     * @param other
+     *      The gamestate to copy
+     */
+    protected MultiwordGamestate(MultiwordGamestate other){
+        super(other);
+        this.columns = new long[][] {other.columns[0].clone(), other.columns[1].clone()};
+    }
+
+    @Override
+    public MultiwordGamestate copy(){
+        return new MultiwordGamestate(this);
+    }
+
+    /**
+     * Places a given counter in a given column, the new cell being the lowest
+     * empty bit of the column's occupied cells.
+     * @param column
+     *      the column to place the counter in.
+     * @param colour
+     *      the char to be placed on the board.
+     */
+    @Override
+    public void placeCounter(int column, char colour){
+        super.placeCounter(column, colour);
+        long occupied = columns[0][column] | columns[1][column];
+        columns[colourIndex(colour)][column] |= occupied + 1;
+    }
+
+    /**
+     * the reverse action of {@link placeCounter}
+     * @param column
+     *      the column to reset the top piece to empty in.
+     */
+    @Override
+    public void unplaceCounter(int column){
+        super.unplaceCounter(column);
+        long top = ((columns[0][column] | columns[1][column]) + 1) >>> 1;
+        columns[0][column] &= ~top;
+        columns[1][column] &= ~top;
+    }
+
+    /**
+     * @param colour
+     *      The char used for finding four in a row.
+     * @return true if the board's connect length in a row exists on the board
+     *         for the given char, false otherwise
+     */
+    @Override
+    public boolean isWin(char colour){
+        long[] words = columns[colourIndex(colour)];
+        int connect = getConnect();
+        for (long word : words){ //vertical
+            long m = word;
+            for (int i = 1; i < connect && m != 0; i++){
+                m &= word >>> i;
+            }
+            if (m != 0){
+                return true;
+            }
+        }
+        for (int start = 0; start + connect <= words.length; start++){
+            long horizontal = words[start];
+            long up = words[start]; //diagonal /
+            long down = words[start]; //diagonal \
+            for (int i = 1; i < connect; i++){
+                horizontal &= words[start + i];
+                up &= words[start + i] >>> i;
+                down &= words[start + i] << i;
+            }
+            if ((horizontal | up | down) != 0){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param colour
+     *      One of the two counter colours of this gamestate
+     * @return bitmask of the playable columns in which the colour would complete a line
+     */
+    @Override
+    public int getWinningColumns(char colour){
+        long[] words = columns[colourIndex(colour)];
+        int winning = 0;
+        for (int col = 0; col < words.length; col++){
+            int row = Long.bitCount(columns[0][col] | columns[1][col]);
+            if (row < getHeight() && completesLine(words, col, row)){
+                winning |= 1 << col;
+            }
+        }
+        return winning;
+    }
+
+    /**
+     * Finds the moves as {@link BitboardGamestate} does: only the cells the opponent
+     * could complete a line in next turn, and the cells under them, need checking.
+     * @param colour
+     *      The colour to move
+     * @return bitmask of the columns the colour can play without losing next turn
+     */
+    @Override
+    public int getNonLosingColumns(char colour){
+        long[] opponent = columns[1 - colourIndex(colour)];
+        int possible = 0;
+        int forced = 0;
+        int underWin = 0; //columns where the opponent wins on top of the move
+        for (int col = 0; col < opponent.length; col++){
+            int row = Long.bitCount(columns[0][col] | columns[1][col]);
+            if (row >= getHeight()){
+                continue;
+            }
+            possible |= 1 << col;
+            if (completesLine(opponent, col, row)){
+                forced |= 1 << col;
+            }
+            if (row + 1 < getHeight() && completesLine(opponent, col, row + 1)){
+                underWin |= 1 << col;
+            }
+        }
+        if (forced != 0){
+            if ((forced & (forced - 1)) != 0){
+                return 0; //more than one winning cell to block
+            }
+            possible = forced;
+        }
+        return possible & ~underWin;
+    }
+
+    /**
+     * @return true if a counter in the empty cell would complete a line of the words' counters
+     */
+    private boolean completesLine(long[] words, int col, int row){
+        int connect = getConnect();
+        if (row >= connect - 1 && run(words, col, row, 0, -1) >= connect - 1){
+            return true; //vertical, only possible downwards
+        }
+        for (int rowStep = -1; rowStep <= 1; rowStep++){
+            if (run(words, col, row, 1, rowStep) + run(words, col, row, -1, -rowStep) >= connect - 1){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of the words' counters in a row from next to the cell along the step
+     */
+    private int run(long[] words, int col, int row, int colStep, int rowStep){
+        int count = 0;
+        for (int c = col + colStep, r = row + rowStep;
+                c >= 0 && c < words.length && r >= 0 && r < getHeight() && (words[c] & (1L << r)) != 0;
+                c += colStep, r += rowStep){
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @param colour
+     *      One of the two counter colours of this gamestate
+     * @param column
+     *      The column to get
+     * @return the cells of the column holding the colour, bit r being r rows up from the bottom
+     */
+    public long getColumn(char colour, int column){
+        return columns[colourIndex(colour)][column];
+    }
+}
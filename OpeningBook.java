@@ -0,0 +1,271 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Book of exactly solved opening positions, letting the hard ai play its first
+ * moves instantly rather than searching where the tree is widest.
+ *
+ * The file is a 16 byte header (magic, version, plies, unused) followed by one
+ * long per position, sorted, holding the position key in the upper bits and the
+ * {@link Solver} score of the position for the player to move in the lowest byte.
+ * The key is the bitboard of the player to move plus the mask of every counter,
+ * which is unique for each position whatever the colours are, or the same for the
+ * position's mirror image if that is lower. Mirror images score the same, so only
+ * one of each pair is stored, almost halving the book.
+ *
+ * The file is memory mapped and binary searched rather than read onto the heap,
+ * so opening a book is instant whatever its size.
+ */
+public class OpeningBook {
+    static final int MAGIC = 0x43344246; //"C4BF"
+    static final int VERSION = 2; //2: keys are canonical, one entry for a position and its mirror
+    static final int HEADER_BYTES = 16;
+    static final int NOT_FOUND = Integer.MIN_VALUE;
+
+    //Columns from the centre outwards, used to prefer central moves which score equally
+    private static final int[] COLUMN_ORDER = new int[] {3, 2, 4, 1, 5, 0, 6};
+
+    private final MappedByteBuffer entries;
+    private final int size;
+    private final int plies;
+
+    private OpeningBook(MappedByteBuffer buffer){
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION){
+            throw new IllegalArgumentException("Not an opening book, or one of a different version");
+        }
+        plies = buffer.getInt(8);
+        size = (buffer.capacity() - HEADER_BYTES) / Long.BYTES;
+        entries = buffer;
+    }
+
+    /**
+     * Memory maps a book written by {@link generate}.
+     * @param file
+     *      The book file
+     * @return the opened book
+     * @throws IOException if the file can't be read
+     */
+    public static OpeningBook open(Path file) throws IOException{
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return the number of moves up to which positions are in the book
+     */
+    public int getPlies(){
+        return plies;
+    }
+
+    /**
+     * @return the number of positions in the book
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Binary searches the book for a position.
+     * @param key
+     *      The position key, see {@link key}
+     * @return the score of the position for the player to move, or {@link NOT_FOUND}
+     */
+    public int probe(long key){
+        int low = 0;
+        int high = size - 1;
+        while (low <= high){
+            int mid = (low + high) >>> 1;
+            long entry = entries.getLong(HEADER_BYTES + mid * Long.BYTES);
+            long entryKey = entry >>> 8;
+            if (entryKey < key){
+                low = mid + 1;
+            }
+            else if (entryKey > key){
+                high = mid - 1;
+            }
+            else {
+                return (byte) entry;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Finds the best move for the player to move from the scores of the positions
+     * each column leads to.
+     * @param gs
+     *      The current gamestate
+     * @return the column of the best move, or -1 if the gamestate isn't covered by the book
+     */
+    public int getBestColumn(Gamestate gs){
+        if (!gs.isStandardSize()){
+            return -1; //the book is of the standard board
+        }
+        int moves = Solver.WIDTH * Solver.HEIGHT - gs.getEmptyCells();
+        if (moves >= plies){
+            return -1;
+        }
+        long current = Solver.toBitboard(gs, gs.getColourToPlay());
+        long mask = Solver.toBitboard(gs, ' ') ^ BitboardGamestate.BOARD_MASK;
+        long possible = BitboardGamestate.playableCells(mask);
+        long winning = BitboardGamestate.winningCells(current, mask) & possible;
+        if (winning != 0){
+            return Long.numberOfTrailingZeros(winning) / BitboardGamestate.COLUMN_BITS;
+        }
+
+        int bestColumn = -1;
+        int bestScore = Integer.MIN_VALUE;
+        for (int column : COLUMN_ORDER){
+            long move = possible & BitboardGamestate.columnMask(column);
+            if (move == 0){
+                continue;
+            }
+            int score = probe(key(current ^ mask, mask | move));
+            if (score == NOT_FOUND){
+                return -1;
+            }
+            if (-score > bestScore){
+                bestScore = -score;
+                bestColumn = column;
+            }
+        }
+        return bestColumn;
+    }
+
+    /**
+     * @param current
+     *      The bitboard of the player to move
+     * @param mask
+     *      The bitboard of every occupied cell
+     * @return the canonical key of the position, the lower of its key and its mirror image's
+     */
+    static long key(long current, long mask){
+        return Math.min(current + mask, BitboardGamestate.mirror(current) + BitboardGamestate.mirror(mask));
+    }
+
+    /**
+     * Generates a book of every position up to the given number of moves.
+     * Only the positions with exactly that many moves are solved, the scores of
+     * earlier positions are the best of the scores of the positions they lead to.
+     * @param rootMoves
+     *      Moves from the empty board to generate the book from, "" for every opening
+     * @param plies
+     *      The number of moves up to which to include positions
+     * @param file
+     *      The file to write the book to
+     * @throws IOException if the file can't be written
+     */
+    public static void generate(String rootMoves, int plies, Path file) throws IOException{
+        Gamestate root = new BitboardGamestate();
+        root.playMoves(rootMoves);
+        int rootPly = rootMoves.length();
+        long current = Solver.toBitboard(root, root.getColourToPlay());
+        long mask = Solver.toBitboard(root, ' ') ^ BitboardGamestate.BOARD_MASK;
+
+        //every position by ply, as {current, mask} pairs, skipping positions already won
+        List<Map<Long, long[]>> levels = new ArrayList<>();
+        Map<Long, long[]> level = new HashMap<>();
+        level.put(key(current, mask), new long[] {current, mask});
+        levels.add(level);
+        for (int ply = rootPly; ply < plies; ply++){
+            Map<Long, long[]> next = new HashMap<>();
+            for (long[] position : level.values()){
+                if (Solver.canWinNext(position[0], position[1])){
+                    continue; //every move after this one ends the game or loses it
+                }
+                long possible = BitboardGamestate.playableCells(position[1]);
+                for (int col = 0; col < Solver.WIDTH; col++){
+                    long move = possible & BitboardGamestate.columnMask(col);
+                    if (move != 0){
+                        long childCurrent = position[0] ^ position[1];
+                        long childMask = position[1] | move;
+                        next.putIfAbsent(key(childCurrent, childMask), new long[] {childCurrent, childMask});
+                    }
+                }
+            }
+            levels.add(next);
+            level = next;
+        }
+
+        Solver solver = new Solver();
+        Map<Long, Integer> scores = new HashMap<>();
+        int solved = 0;
+        long startTime = System.nanoTime();
+        for (long[] position : level.values()){
+            scores.put(key(position[0], position[1]), solver.solve(position[0], position[1], plies));
+            if (++solved % 100 == 0){
+                System.out.printf("Solved %d of %d positions at %d moves in %.1f seconds\n",
+                    solved, level.size(), plies, (System.nanoTime() - startTime) / 1e9);
+            }
+        }
+
+        for (int ply = plies - 1; ply >= rootPly; ply--){
+            for (long[] position : levels.get(ply - rootPly).values()){
+                scores.put(key(position[0], position[1]), backedUpScore(position[0], position[1], ply, scores));
+            }
+        }
+        write(scores, plies, file);
+    }
+
+    /**
+     * @return the score of a position from the scores of the positions it leads to
+     */
+    private static int backedUpScore(long current, long mask, int ply, Map<Long, Integer> scores){
+        if (Solver.canWinNext(current, mask)){
+            return (Solver.WIDTH * Solver.HEIGHT + 1 - ply) / 2;
+        }
+        int best = Integer.MIN_VALUE;
+        long possible = BitboardGamestate.playableCells(mask);
+        for (int col = 0; col < Solver.WIDTH; col++){
+            long move = possible & BitboardGamestate.columnMask(col);
+            if (move != 0){
+                best = Math.max(best, -scores.get(key(current ^ mask, mask | move)));
+            }
+        }
+        return best;
+    }
+
+    private static void write(Map<Long, Integer> scores, int plies, Path file) throws IOException{
+        long[] entries = new long[scores.size()];
+        int i = 0;
+        for (Map.Entry<Long, Integer> score : scores.entrySet()){
+            entries[i++] = (score.getKey() << 8) | (score.getValue() & 0xFF);
+        }
+        Arrays.sort(entries); //keys are under 56 bits, so entries sort by key
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + entries.length * Long.BYTES);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(plies).putInt(0);
+        buffer.asLongBuffer().put(entries);
+        buffer.rewind();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            while (buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Generates a book, can be run with three optional args: the number of moves
+     * to include positions up to, the file to write and moves to generate from.
+     */
+    public static void main(String[] args) throws IOException{
+        int plies = args.length >= 1 ? Integer.parseInt(args[0]) : 8;
+        Path file = Paths.get(args.length >= 2 ? args[1] : "opening.book");
+        String rootMoves = args.length >= 3 ? args[2] : "";
+        long startTime = System.nanoTime();
+        generate(rootMoves, plies, file);
+        System.out.printf("Wrote %s in %.1f seconds\n", file, (System.nanoTime() - startTime) / 1e9);
+    }
+}
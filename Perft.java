@@ -0,0 +1,228 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Position enumerator (perft), playing every sequence of moves from a position to a
+ * depth through the gamestate's own {@link Gamestate#getPossibleColumns},
+ * {@link Gamestate#placeCounter}, {@link Gamestate#isWin} and {@link Gamestate#unplaceCounter}.
+ * Counting them checks the board code is still correct, and timing them shows how fast it is.
+ *
+ * Counts the positions reached at each ply, and of those the games won and drawn there,
+ * no moves being played after a win. The top plies are split across a fork-join pool,
+ * each task playing on its own copy of the gamestate.
+ *
+ * From the empty standard board the counts must match {@link STANDARD_POSITIONS} and
+ * {@link STANDARD_WINS}, counted by a separate plain array implementation of the rules.
+ */
+public class Perft {
+    private static final char[] COLOURS = new char[] {'r', 'y'};
+    private static final int SEQUENTIAL_DEPTH = 5; //remaining depth searched by a task without splitting
+
+    //From the empty standard board, by ply: the positions reached, and the games won there
+    static final long[] STANDARD_POSITIONS = {
+        1L, 7L, 49L, 343L, 2401L, 16807L, 117649L, 823536L, 5673234L, 39394572L, 268031646L, 1844590828L
+    };
+    static final long[] STANDARD_WINS = {
+        0L, 0L, 0L, 0L, 0L, 0L, 0L, 13032L, 44430L, 1086882L, 4261058L, 67282752L
+    };
+
+    private final ForkJoinPool pool;
+
+    /**
+     * @param threads
+     *      The number of threads to enumerate with
+     */
+    public Perft(int threads){
+        pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Counts every position reached from a gamestate to a depth.
+     * @param gs
+     *      The gamestate to start from, neither won nor full, left as it was found
+     * @param depth
+     *      The number of plies to play
+     * @return the counts for each ply up to the depth, ply 0 being the gamestate itself
+     */
+    public Counts count(Gamestate gs, int depth){
+        char colour = gs.getColourToPlay();
+        char opColour = colour == gs.getColours()[0] ? gs.getColours()[1] : gs.getColours()[0];
+        Counts counts = pool.invoke(new PerftTask(gs.copy(), depth, 0, colour, opColour));
+        counts.positions[0]++;
+        return counts;
+    }
+
+    public void shutdown(){
+        pool.shutdown();
+    }
+
+    /**
+     * Counts the positions below a gamestate, forking a task per move while more than
+     * {@link SEQUENTIAL_DEPTH} plies remain.
+     */
+    private static class PerftTask extends RecursiveTask<Counts> {
+        private static final long serialVersionUID = 1L;
+        private final Gamestate gs; //the task's own copy
+        private final int depth; //plies left to play
+        private final int ply; //plies played from the root
+        private final char colour; //to move
+        private final char opColour;
+
+        PerftTask(Gamestate gs, int depth, int ply, char colour, char opColour){
+            this.gs = gs;
+            this.depth = depth;
+            this.ply = ply;
+            this.colour = colour;
+            this.opColour = opColour;
+        }
+
+        @Override
+        protected Counts compute(){
+            Counts counts = new Counts(ply + depth);
+            if (depth <= SEQUENTIAL_DEPTH){
+                if (depth > 0){
+                    enumerate(gs, depth, ply, colour, opColour, counts);
+                }
+                return counts;
+            }
+            List<PerftTask> tasks = new ArrayList<>();
+            for (int column : gs.getPossibleColumns()){
+                gs.placeCounter(column, colour);
+                if (record(gs, ply + 1, colour, counts)){
+                    tasks.add(new PerftTask(gs.copy(), depth - 1, ply + 1, opColour, colour));
+                }
+                gs.unplaceCounter(column);
+            }
+            for (PerftTask task : invokeAll(tasks)){
+                counts.add(task.join());
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * Plays every move sequence to the depth on the calling thread.
+     */
+    private static void enumerate(Gamestate gs, int depth, int ply, char colour, char opColour, Counts counts){
+        for (int column : gs.getPossibleColumns()){
+            gs.placeCounter(column, colour);
+            if (record(gs, ply + 1, colour, counts) && depth > 1){
+                enumerate(gs, depth - 1, ply + 1, opColour, colour, counts);
+            }
+            gs.unplaceCounter(column);
+        }
+    }
+
+    /**
+     * Counts the position just reached.
+     * @return true if the game carries on from it
+     */
+    private static boolean record(Gamestate gs, int ply, char moved, Counts counts){
+        counts.positions[ply]++;
+        if (gs.isWin(moved)){
+            counts.wins[ply]++;
+            return false;
+        }
+        if (gs.isFull()){
+            counts.draws[ply]++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The positions reached at each ply, and of those the games won and drawn there.
+     */
+    public static class Counts {
+        final long[] positions;
+        final long[] wins;
+        final long[] draws;
+
+        Counts(int maxPly){
+            positions = new long[maxPly + 1];
+            wins = new long[maxPly + 1];
+            draws = new long[maxPly + 1];
+        }
+
+        void add(Counts other){
+            for (int ply = 0; ply < other.positions.length; ply++){
+                positions[ply] += other.positions[ply];
+                wins[ply] += other.wins[ply];
+                draws[ply] += other.draws[ply];
+            }
+        }
+
+        /**
+         * @return the number of plies counted after the starting position
+         */
+        public int getDepth(){
+            return positions.length - 1;
+        }
+
+        public long getPositions(int ply){
+            return positions[ply];
+        }
+
+        public long getWins(int ply){
+            return wins[ply];
+        }
+
+        public long getDraws(int ply){
+            return draws[ply];
+        }
+
+        /**
+         * @return every position reached, the starting position included
+         */
+        public long getTotalPositions(){
+            long total = 0;
+            for (long count : positions){
+                total += count;
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Enumerates to a depth, printing the counts for each ply and the positions per second.
+     * Args: the depth (default 9), then optionally the moves to start from (default the empty
+     * board, "-" for it), the number of threads and "char" to use the char array gamestate
+     * rather than the bitboards. From the empty standard board the counts are checked
+     * against the known counts, exiting with 1 if any differ.
+     */
+    public static void main(String[] args){
+        int depth = args.length >= 1 ? Integer.parseInt(args[0]) : 9;
+        String moves = args.length >= 2 && !args[1].equals("-") ? args[1] : "";
+        int threads = args.length >= 3 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        boolean charBoard = args.length >= 4 && args[3].equals("char");
+
+        Gamestate gs = charBoard ? new Gamestate(COLOURS) : new BitboardGamestate(COLOURS);
+        gs.playMoves(moves);
+        Perft perft = new Perft(threads);
+        long startTime = System.nanoTime();
+        Counts counts = perft.count(gs, depth);
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        perft.shutdown();
+
+        boolean checked = moves.isEmpty();
+        boolean mismatch = false;
+        for (int ply = 1; ply <= depth; ply++){
+            String check = "";
+            if (checked && ply < STANDARD_POSITIONS.length){
+                boolean ok = counts.getPositions(ply) == STANDARD_POSITIONS[ply] && counts.getWins(ply) == STANDARD_WINS[ply];
+                mismatch |= !ok;
+                check = ok ? "  ok" : String.format("  MISMATCH, expected %d positions, %d wins",
+                    STANDARD_POSITIONS[ply], STANDARD_WINS[ply]);
+            }
+            System.out.printf("ply %2d: %,15d positions %,13d wins %,9d draws%s\n", ply,
+                counts.getPositions(ply), counts.getWins(ply), counts.getDraws(ply), check);
+        }
+        System.out.printf("%,d positions in %.3fs with %d threads, %,.0f positions/s\n",
+            counts.getTotalPositions(), seconds, threads, counts.getTotalPositions() / seconds);
+        if (mismatch){
+            System.exit(1);
+        }
+    }
+}
@@ -8,6 +8,7 @@ abstract class Player {
     
     protected char colour;
     protected String name;
+    protected boolean verbose = true; //whether ais print the moves they play
 
     /**
      * Instantiated by subclasses, used to get the input for a given player
@@ -24,4 +25,24 @@ abstract class Player {
     public char getColour(){
         return colour;
     }
+
+    /**
+     * Forgets anything learnt from previous games, nothing by default.
+     */
+    public void reset(){
+    }
+
+    /**
+     * Stops any threads the player keeps, for when it won't play again, nothing by default.
+     */
+    public void shutdown(){
+    }
+
+    /**
+     * @param verbose
+     *      false to stop the player printing to the console, for running headless
+     */
+    public void setVerbose(boolean verbose){
+        this.verbose = verbose;
+    }
 }
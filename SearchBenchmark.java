@@ -0,0 +1,136 @@
+import java.util.function.Supplier;
+
+/**
+ * Command line benchmark for the hard ai, timing fixed depth searches
+ * of a handful of positions with one thread and with several, and printing
+ * the speedup of the parallel search, then comparing the nodes searched by
+ * plain alpha/beta minimax against principal variation search, then the
+ * search speed on larger boards and with each gamestate representation.
+ * Can be run with two optional args, the number of threads and the depth.
+ */
+public class SearchBenchmark {
+    //Positions as moves from the empty board, columns numbered from 1
+    static final String[] POSITIONS = {
+        "",                           //opening
+        "4453",
+        "666331116375",               //middlegame
+        "16547316477117",
+        "46745714127452411775147356", //endgame
+        "431773471311743624135725734261"
+    };
+
+    private static final char[] COLOURS = new char[] {'r', 'y'};
+    private static double lastCutoffRate; //of the last single threaded search
+
+    public static void main(String[] args){
+        int threads = args.length >= 1 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int depth = args.length >= 2 ? Integer.parseInt(args[1]) : 9;
+
+        timeSearch(POSITIONS[1], 1, depth - 2); //warm up the jit
+        timeSearch(POSITIONS[1], threads, depth - 2);
+
+        double totalSingle = 0;
+        double totalParallel = 0;
+        for (String moves : POSITIONS){
+            double single = timeSearch(moves, 1, depth);
+            double parallel = timeSearch(moves, threads, depth);
+            totalSingle += single;
+            totalParallel += parallel;
+            System.out.printf("%-32s depth %d: 1 thread %.3fs, %d threads %.3fs, speedup %.2fx, first move cutoffs %.1f%%\n",
+                "\"" + moves + "\"", depth, single, threads, parallel, single / parallel, lastCutoffRate * 100);
+        }
+        System.out.printf("Total: 1 thread %.3fs, %d threads %.3fs, speedup %.2fx\n",
+            totalSingle, threads, totalParallel, totalSingle / totalParallel);
+
+        long totalMinimax = 0;
+        long totalPvs = 0;
+        for (String moves : POSITIONS){
+            long minimax = countNodes(moves, depth, false);
+            long pvs = countNodes(moves, depth, true);
+            totalMinimax += minimax;
+            totalPvs += pvs;
+            System.out.printf("%-32s depth %d: alpha/beta %d nodes, PVS %d nodes, %.1f%% of alpha/beta\n",
+                "\"" + moves + "\"", depth, minimax, pvs, 100.0 * pvs / minimax);
+        }
+        System.out.printf("Total: alpha/beta %d nodes, PVS %d nodes, %.1f%% of alpha/beta\n",
+            totalMinimax, totalPvs, 100.0 * totalPvs / totalMinimax);
+
+        timeBoard("7x6 char", () -> new Gamestate(COLOURS), depth);
+        timeBoard("7x6 bitboard", () -> new BitboardGamestate(COLOURS), depth);
+        timeBoard("8x7 bitboard", () -> Gamestate.create(COLOURS, 8, 7, 4), depth);
+        timeBoard("9x7 multiword", () -> Gamestate.create(COLOURS, 9, 7, 4), depth);
+        timeBoard("9x7 char", () -> new Gamestate(COLOURS, 9, 7, 4), depth);
+    }
+
+    /**
+     * Prints the time and nodes per second of a fixed depth search of the opening
+     * of a board, by a new single threaded ai.
+     * @param label
+     *      The board size and representation
+     * @param board
+     *      Creates the empty board
+     * @param depth
+     *      The depth to search to
+     */
+    private static void timeBoard(String label, Supplier<Gamestate> board, int depth){
+        Gamestate gs = board.get();
+        gs.playMoves("44");
+        HardAI ai = new HardAI(COLOURS[0], COLOURS[1]);
+        ai.setVerbose(false);
+        ai.searchIteratively(gs.copy(), depth - 2, 0, null); //warm up the jit
+
+        ai.reset();
+        long startTime = System.nanoTime();
+        SearchStats stats = ai.searchIteratively(gs, depth, 0, null);
+        double time = (System.nanoTime() - startTime) / 1e9;
+        System.out.printf("%-14s depth %d: %.3fs, %d nodes, %.0f nodes/s\n",
+            label, depth, time, stats.getNodes(), stats.getNodes() / time);
+    }
+
+    /**
+     * @param moves
+     *      The position to search, as moves from the empty board
+     * @param depth
+     *      The depth to search to, by iterative deepening so PVS uses aspiration windows
+     * @param principalVariationSearch
+     *      true for PVS, false for plain alpha/beta
+     * @return the nodes searched, by a new single threaded ai
+     */
+    private static long countNodes(String moves, int depth, boolean principalVariationSearch){
+        Gamestate gs = new BitboardGamestate(COLOURS);
+        gs.playMoves(moves);
+        char colour = gs.getColourToPlay();
+        HardAI ai = new HardAI(colour, colour == COLOURS[0] ? COLOURS[1] : COLOURS[0]);
+        ai.setVerbose(false);
+        ai.setPrincipalVariationSearch(principalVariationSearch);
+        return ai.searchIteratively(gs, Math.min(depth, gs.getEmptyCells()), 0, null).getNodes();
+    }
+
+    /**
+     * @param moves
+     *      The position to search, as moves from the empty board
+     * @param threads
+     *      The number of threads to search with
+     * @param depth
+     *      The depth to search to
+     * @return the time taken in seconds, by a new ai so the transposition table starts empty
+     */
+    private static double timeSearch(String moves, int threads, int depth){
+        Gamestate gs = new BitboardGamestate(COLOURS);
+        gs.playMoves(moves);
+        char colour = gs.getColourToPlay();
+        HardAI ai = new HardAI(colour, colour == COLOURS[0] ? COLOURS[1] : COLOURS[0]);
+        ai.setVerbose(false);
+        ai.setSearchDepth(depth);
+        ai.setThreads(threads);
+
+        long startTime = System.nanoTime();
+        ai.getInput(gs);
+        double time = (System.nanoTime() - startTime) / 1e9;
+        if (threads == 1){
+            lastCutoffRate = ai.getLastSearchStats().getFirstMoveCutoffRate();
+        }
+        ai.setThreads(1);
+        return time;
+    }
+}
@@ -0,0 +1,72 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event for each move chosen by the hard ai, so searches can
+ * be recorded and charted with the standard JFR tools. Costs nothing beyond a
+ * check per move unless a recording with the event enabled is running.
+ */
+@Name("connectfour.Search")
+@Label("Search")
+@Category("Connect Four")
+@Description("A search by the hard ai for its next move")
+class SearchEvent extends Event {
+    @Label("Best Column")
+    int bestColumn;
+
+    @Label("Score")
+    int score;
+
+    @Label("Depth")
+    int depth;
+
+    @Label("From Book")
+    boolean fromBook;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Nodes Per Second")
+    long nodesPerSecond;
+
+    @Label("Leaf Evaluations")
+    long leafEvaluations;
+
+    @Label("Transposition Table Hits")
+    long ttHits;
+
+    @Label("Effective Branching Factor")
+    double effectiveBranchingFactor;
+
+    @Label("First Move Cutoff Rate")
+    double firstMoveCutoffRate;
+
+    @Label("Principal Variation")
+    String principalVariation;
+
+    /**
+     * Fills in the event from the stats and commits it, if it is being recorded.
+     * @param stats
+     *      The stats of the search
+     */
+    void commit(SearchStats stats){
+        if (!shouldCommit()){
+            return;
+        }
+        bestColumn = stats.getBestColumn();
+        score = stats.getScore();
+        depth = stats.getDepth();
+        fromBook = stats.isFromBook();
+        nodes = stats.getNodes();
+        nodesPerSecond = stats.getNodesPerSecond();
+        leafEvaluations = stats.getLeafEvaluations();
+        ttHits = stats.getTtHits();
+        effectiveBranchingFactor = stats.getEffectiveBranchingFactor();
+        firstMoveCutoffRate = stats.getFirstMoveCutoffRate();
+        principalVariation = stats.getPrincipalVariationString();
+        commit();
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * Notified by the hard ai as it searches, e.g. to chart engine health on a dashboard.
+ * Called on the searching thread, so implementations should return quickly.
+ */
+public interface SearchListener {
+
+    /**
+     * Called when an iteration of iterative deepening completes, with the best move so far.
+     * @param stats
+     *      The stats of the search up to the end of the iteration
+     */
+    default void onIteration(SearchStats stats){
+    }
+
+    /**
+     * Called when a move has been chosen.
+     * @param stats
+     *      The stats of the whole search
+     */
+    void onSearchComplete(SearchStats stats);
+}
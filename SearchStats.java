@@ -0,0 +1,139 @@
+import java.util.Arrays;
+
+/**
+ * The result of a search by the hard ai, the move chosen along with measures of
+ * how the search went, for printing, listeners and monitoring.
+ */
+public class SearchStats {
+    private final int bestColumn;
+    private final int score;
+    private final int depth;
+    private final boolean fromBook;
+    private final long nodes;
+    private final long leafEvaluations;
+    private final long ttHits;
+    private final long[] cutoffsByMoveIndex;
+    private final long elapsedNanos;
+    private final int[] principalVariation;
+
+    /**
+     * @param bestColumn
+     *      The column chosen
+     * @param score
+     *      The score of the chosen move, from the ai's point of view
+     * @param depth
+     *      The depth of the deepest completed search, 0 for a book move
+     * @param fromBook
+     *      Whether the move came from the opening book rather than a search
+     * @param nodes
+     *      The number of gamestates searched, including leaves
+     * @param leafEvaluations
+     *      The number of gamestates scored at the leaves, at the depth limit or the end of the game
+     * @param ttHits
+     *      The number of gamestates found in the transposition table
+     * @param cutoffsByMoveIndex
+     *      The number of beta cutoffs caused by the first, second... move searched
+     * @param elapsedNanos
+     *      The time taken
+     * @param principalVariation
+     *      The columns of the best line of play found, starting with the chosen move
+     */
+    public SearchStats(int bestColumn, int score, int depth, boolean fromBook, long nodes,
+            long leafEvaluations, long ttHits, long[] cutoffsByMoveIndex, long elapsedNanos,
+            int[] principalVariation){
+        this.bestColumn = bestColumn;
+        this.score = score;
+        this.depth = depth;
+        this.fromBook = fromBook;
+        this.nodes = nodes;
+        this.leafEvaluations = leafEvaluations;
+        this.ttHits = ttHits;
+        this.cutoffsByMoveIndex = cutoffsByMoveIndex;
+        this.elapsedNanos = elapsedNanos;
+        this.principalVariation = principalVariation;
+    }
+
+    public int getBestColumn(){
+        return bestColumn;
+    }
+
+    public int getScore(){
+        return score;
+    }
+
+    public int getDepth(){
+        return depth;
+    }
+
+    public boolean isFromBook(){
+        return fromBook;
+    }
+
+    public long getNodes(){
+        return nodes;
+    }
+
+    public long getLeafEvaluations(){
+        return leafEvaluations;
+    }
+
+    public long getTtHits(){
+        return ttHits;
+    }
+
+    public long[] getCutoffsByMoveIndex(){
+        return cutoffsByMoveIndex.clone();
+    }
+
+    public long getElapsedNanos(){
+        return elapsedNanos;
+    }
+
+    public int[] getPrincipalVariation(){
+        return principalVariation.clone();
+    }
+
+    public long getNodesPerSecond(){
+        return elapsedNanos == 0 ? 0 : (long) (nodes * 1e9 / elapsedNanos);
+    }
+
+    /**
+     * @return the branching factor a uniform tree of the same depth would need
+     *         to have as many nodes, the lower the better the pruning
+     */
+    public double getEffectiveBranchingFactor(){
+        return depth == 0 || nodes == 0 ? 0 : Math.pow(nodes, 1.0 / depth);
+    }
+
+    /**
+     * @return the fraction of beta cutoffs caused by the first move searched
+     */
+    public double getFirstMoveCutoffRate(){
+        long cutoffs = 0;
+        for (long count : cutoffsByMoveIndex){
+            cutoffs += count;
+        }
+        return cutoffs == 0 ? 0 : (double) cutoffsByMoveIndex[0] / cutoffs;
+    }
+
+    /**
+     * @return the principal variation as columns numbered from 1, e.g. "4453", then
+     *         'a' for column 10 onwards on wider boards, as {@link Gamestate#playMoves} reads
+     */
+    public String getPrincipalVariationString(){
+        StringBuilder moves = new StringBuilder();
+        for (int column : principalVariation){
+            moves.append(Character.forDigit(column + 1, Character.MAX_RADIX));
+        }
+        return moves.toString();
+    }
+
+    @Override
+    public String toString(){
+        return "depth " + depth + " score " + score + " nodes " + nodes + " nps " + getNodesPerSecond()
+            + " leaves " + leafEvaluations + " tthits " + ttHits
+            + " ebf " + String.format("%.2f", getEffectiveBranchingFactor())
+            + " cutoffs " + Arrays.toString(cutoffsByMoveIndex)
+            + " time " + elapsedNanos / 1000000 + " pv " + getPrincipalVariationString();
+    }
+}
@@ -0,0 +1,325 @@
+import java.util.Arrays;
+
+/**
+ * Perfect play solver, finding the exact outcome of a gamestate rather than
+ * estimating it as the hard ai does.
+ *
+ * Scores are from the point of view of the player to move: positive if they win,
+ * negative if they lose and 0 for a draw. A win scores more the sooner it comes,
+ * 1 for winning with their last counter, up to 18 ({@link MAX_SCORE}) for winning with their fourth.
+ *
+ * Uses negamax with alpha/beta pruning on a compact bitboard of the player to move
+ * and a mask of every counter. The window is narrowed to the scores still possible
+ * from the number of moves played, moves letting the opponent win immediately are
+ * never searched, and the exact score is found by a binary search of null window
+ * searches, each only answering whether the score is above a guess.
+ */
+public class Solver {
+    static final int WIDTH = BitboardGamestate.WIDTH;
+    static final int HEIGHT = BitboardGamestate.HEIGHT;
+    static final int MIN_SCORE = -(WIDTH * HEIGHT) / 2 + 3;
+    static final int MAX_SCORE = (WIDTH * HEIGHT + 1) / 2 - 3;
+
+    //Columns from the centre outwards, the centre columns being part of the most lines
+    private static final int[] COLUMN_ORDER = new int[] {3, 2, 4, 1, 5, 0, 6};
+
+    //Transposition table, a prime number of entries so the low 32 bits of the key plus
+    //the index identify the key exactly. Values are 0 for empty, otherwise bounds offset
+    //to be positive, upper bounds below lower bounds.
+    private static final int TABLE_SIZE = 8388593;
+    private final int[] tableKeys = new int[TABLE_SIZE];
+    private final byte[] tableValues = new byte[TABLE_SIZE];
+
+    //Move ordering buffers, one per number of moves played, so sorting allocates nothing
+    private final long[][] sortedMoves = new long[WIDTH * HEIGHT][WIDTH];
+    private final int[][] sortedScores = new int[WIDTH * HEIGHT][WIDTH];
+
+    private long nodes;
+
+    /**
+     * Solves the positions given as args, each as moves from the empty board
+     * with columns numbered from 1, printing their score and best move.
+     */
+    public static void main(String[] args){
+        Solver solver = new Solver();
+        for (String moves : args){
+            Gamestate gs = new BitboardGamestate();
+            gs.playMoves(moves);
+            long startTime = System.nanoTime();
+            int score = solver.solve(gs);
+            int column = solver.getBestColumn(gs);
+            System.out.printf("%s: score %d, game ends in %d moves, best column %d, in %.3f seconds\n",
+                moves, score, movesToEnd(score, moves.length()), column + 1, (System.nanoTime() - startTime) / 1e9);
+        }
+    }
+
+    /**
+     * Finds the exact score of a gamestate, for the player whose turn it is.
+     * @param gs
+     *      The gamestate to solve, which must not already be won
+     * @return the score of the gamestate for the player to move
+     * @throws IllegalArgumentException if the board isn't the standard size
+     */
+    public int solve(Gamestate gs){
+        checkStandardSize(gs);
+        char colour = gs.getColourToPlay();
+        return solve(toBitboard(gs, colour), toBitboard(gs, ' ') ^ BitboardGamestate.BOARD_MASK,
+            WIDTH * HEIGHT - gs.getEmptyCells());
+    }
+
+    /**
+     * @param current
+     *      The bitboard of the player to move
+     * @param mask
+     *      The bitboard of every occupied cell
+     * @param moves
+     *      The number of counters on the board
+     * @return the exact score for the player to move
+     */
+    int solve(long current, long mask, int moves){
+        if (canWinNext(current, mask)){
+            return (WIDTH * HEIGHT + 1 - moves) / 2;
+        }
+        int min = -(WIDTH * HEIGHT - moves) / 2;
+        int max = (WIDTH * HEIGHT + 1 - moves) / 2;
+        while (min < max){
+            int med = min + (max - min) / 2;
+            //search closer to 0 first, as most scores are near it and these searches are quickest
+            if (med <= 0 && min / 2 < med){
+                med = min / 2;
+            }
+            else if (med >= 0 && max / 2 > med){
+                med = max / 2;
+            }
+            int r = negamax(current, mask, moves, med, med + 1);
+            if (r <= med){
+                max = r;
+            }
+            else {
+                min = r;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Finds the column giving the best score for the player to move,
+     * preferring the centre when columns score equally.
+     * @param gs
+     *      The gamestate to find a move for, which must not already be won or full
+     * @return the column of the best move
+     * @throws IllegalArgumentException if the board isn't the standard size
+     */
+    public int getBestColumn(Gamestate gs){
+        checkStandardSize(gs);
+        char colour = gs.getColourToPlay();
+        long current = toBitboard(gs, colour);
+        long mask = toBitboard(gs, ' ') ^ BitboardGamestate.BOARD_MASK;
+        int moves = WIDTH * HEIGHT - gs.getEmptyCells();
+
+        long winning = BitboardGamestate.winningCells(current, mask) & BitboardGamestate.playableCells(mask);
+        int bestColumn = -1;
+        int bestScore = Integer.MIN_VALUE;
+        for (int column : COLUMN_ORDER){
+            long move = BitboardGamestate.playableCells(mask) & BitboardGamestate.columnMask(column);
+            if (move == 0){
+                continue;
+            }
+            if ((winning & move) != 0){
+                return column;
+            }
+            int score = moves + 1 == WIDTH * HEIGHT ? 0 : -solve(current ^ mask, mask | move, moves + 1);
+            if (score > bestScore){
+                bestScore = score;
+                bestColumn = column;
+            }
+        }
+        return bestColumn;
+    }
+
+    /**
+     * @param score
+     *      A score from {@link solve}
+     * @param moves
+     *      The number of counters on the board when the score was found
+     * @return the number of moves until the game ends with perfect play, including the final one,
+     *         or the number of empty cells if the score is a draw
+     */
+    public static int movesToEnd(int score, int moves){
+        if (score == 0){
+            return WIDTH * HEIGHT - moves;
+        }
+        //the winner's final counter is counter number 43 - 2 * |score| or the one after,
+        //whichever is one of the winner's counters
+        int finalMove = WIDTH * HEIGHT + 1 - 2 * Math.abs(score);
+        int winnerParity = score > 0 ? (moves + 1) % 2 : moves % 2;
+        if (finalMove % 2 != winnerParity){
+            finalMove++;
+        }
+        return finalMove - moves;
+    }
+
+    /**
+     * @return the number of gamestates searched since this solver was created
+     */
+    public long getNodeCount(){
+        return nodes;
+    }
+
+    /**
+     * Empties the transposition table.
+     */
+    public void reset(){
+        Arrays.fill(tableKeys, 0);
+        Arrays.fill(tableValues, (byte) 0);
+    }
+
+    /**
+     * Negamax with alpha/beta pruning, the player to move must not be able to win immediately.
+     * @param current
+     *      The bitboard of the player to move
+     * @param mask
+     *      The bitboard of every occupied cell
+     * @param moves
+     *      The number of counters on the board
+     * @param alpha
+     *
+     * @param beta
+     *
+     * @return the exact score if it is within (alpha, beta), otherwise an upper bound
+     *         no greater than alpha, or a lower bound no less than beta
+     */
+    private int negamax(long current, long mask, int moves, int alpha, int beta){
+        nodes++;
+
+        long next = BitboardGamestate.nonLosingCells(current, mask);
+        if (next == 0){
+            return -(WIDTH * HEIGHT - moves) / 2; //every move lets the opponent win next turn
+        }
+        if (moves >= WIDTH * HEIGHT - 2){
+            return 0; //neither player can win with the last two counters
+        }
+
+        int min = -(WIDTH * HEIGHT - 2 - moves) / 2; //the opponent can't win next turn
+        if (alpha < min){
+            alpha = min;
+            if (alpha >= beta){
+                return alpha;
+            }
+        }
+        int max = (WIDTH * HEIGHT - 1 - moves) / 2; //we can't win this turn
+        long key = current + mask;
+        int index = (int) (key % TABLE_SIZE);
+        if (tableKeys[index] == (int) key && tableValues[index] != 0){
+            int value = tableValues[index];
+            if (value > MAX_SCORE - MIN_SCORE + 1){
+                min = value + 2 * MIN_SCORE - MAX_SCORE - 2;
+                if (alpha < min){
+                    alpha = min;
+                    if (alpha >= beta){
+                        return alpha;
+                    }
+                }
+            }
+            else {
+                max = value + MIN_SCORE - 1;
+            }
+        }
+        if (beta > max){
+            beta = max;
+            if (alpha >= beta){
+                return beta;
+            }
+        }
+
+        int count = sortMoves(current, mask, moves, next);
+        long[] ordered = sortedMoves[moves];
+        for (int i = 0; i < count; i++){
+            long move = ordered[i];
+            int score = -negamax(current ^ mask, mask | move, moves + 1, -beta, -alpha);
+            if (score >= beta){
+                store(index, key, score + MAX_SCORE - 2 * MIN_SCORE + 2); //lower bound
+                return score;
+            }
+            if (score > alpha){
+                alpha = score;
+            }
+        }
+        store(index, key, alpha - MIN_SCORE + 1); //upper bound
+        return alpha;
+    }
+
+    /**
+     * Orders the moves by how many winning cells they leave the player to move,
+     * centre columns first for ties, using an insertion sort into the buffer
+     * for the number of moves played.
+     * @return the number of moves in the buffer
+     */
+    private int sortMoves(long current, long mask, int moves, long next){
+        long[] ordered = sortedMoves[moves];
+        int[] scores = sortedScores[moves];
+        int count = 0;
+        for (int i = WIDTH - 1; i >= 0; i--){
+            long move = next & BitboardGamestate.columnMask(COLUMN_ORDER[i]);
+            if (move == 0){
+                continue;
+            }
+            int score = Long.bitCount(BitboardGamestate.winningCells(current | move, mask | move));
+            int pos = count++;
+            for (; pos > 0 && scores[pos - 1] > score; pos--){
+                ordered[pos] = ordered[pos - 1];
+                scores[pos] = scores[pos - 1];
+            }
+            ordered[pos] = move;
+            scores[pos] = score;
+        }
+        //the best are at the end, reverse so they come first, ties staying centre first
+        for (int i = 0, j = count - 1; i < j; i++, j--){
+            long move = ordered[i];
+            ordered[i] = ordered[j];
+            ordered[j] = move;
+            int score = scores[i];
+            scores[i] = scores[j];
+            scores[j] = score;
+        }
+        return count;
+    }
+
+    private static void checkStandardSize(Gamestate gs){
+        if (!gs.isStandardSize()){
+            throw new IllegalArgumentException("The solver only solves the standard board");
+        }
+    }
+
+    private void store(int index, long key, int value){
+        tableKeys[index] = (int) key;
+        tableValues[index] = (byte) value;
+    }
+
+    /**
+     * @return true if the player to move can complete four in a row with their next counter
+     */
+    static boolean canWinNext(long current, long mask){
+        return (BitboardGamestate.winningCells(current, mask) & BitboardGamestate.playableCells(mask)) != 0;
+    }
+
+    /**
+     * @param gs
+     *      Any gamestate, whatever its representation
+     * @param colour
+     *      The colour to find the counters of, ' ' for empty cells
+     * @return a bitboard of the cells holding the colour
+     */
+    static long toBitboard(Gamestate gs, char colour){
+        char[][] board = gs.getBoard();
+        long bitboard = 0;
+        for (int col = 0; col < WIDTH; col++){
+            for (int row = 0; row < HEIGHT; row++){
+                if (board[col][HEIGHT - 1 - row] == colour){ //the char board's row 0 is the top
+                    bitboard |= 1L << (col * BitboardGamestate.COLUMN_BITS + row);
+                }
+            }
+        }
+        return bitboard;
+    }
+}
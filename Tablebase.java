@@ -0,0 +1,311 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Endgame tablebase of exactly solved late game positions, letting the hard ai's search
+ * stop with the true result wherever few enough cells are left, rather than searching
+ * on to its depth and guessing with the heuristic.
+ *
+ * Every position with at most a given number of empty cells reachable from a set of seed
+ * positions is included, found by playing out every move from the seeds, so the seeds
+ * decide what the tablebase covers: the positions of stored games, or a few late
+ * middlegame positions. Every position on the board would be far too many.
+ *
+ * The file is a 16 byte header (magic, version, most empty cells, number of positions),
+ * then the sorted position keys, one long each (see {@link OpeningBook#key}, a position
+ * and its mirror share a key), then the results, 2 bits each in the order of the keys,
+ * four to a byte. The file is memory mapped and binary searched, so the results stay
+ * off the heap however many there are.
+ */
+public class Tablebase {
+    static final int MAGIC = 0x43345442; //"C4TB"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+
+    //Results for the player to move
+    public static final int LOSS = 0;
+    public static final int DRAW = 1;
+    public static final int WIN = 2;
+    public static final int NOT_FOUND = -1;
+
+    private final MappedByteBuffer buffer;
+    private final int maxEmptyCells;
+    private final int size;
+    private final int resultsOffset;
+
+    private Tablebase(MappedByteBuffer buffer){
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION){
+            throw new IllegalArgumentException("Not a tablebase, or one of a different version");
+        }
+        maxEmptyCells = buffer.getInt(8);
+        size = buffer.getInt(12);
+        resultsOffset = HEADER_BYTES + size * Long.BYTES;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Memory maps a tablebase written by {@link generate}.
+     * @param file
+     *      The tablebase file
+     * @return the opened tablebase
+     * @throws IOException if the file can't be read
+     */
+    public static Tablebase open(Path file) throws IOException{
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            return new Tablebase(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return the most empty cells a position in the tablebase has
+     */
+    public int getMaxEmptyCells(){
+        return maxEmptyCells;
+    }
+
+    /**
+     * @return the number of positions in the tablebase
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Binary searches the tablebase for a position.
+     * @param key
+     *      The position key, see {@link Gamestate#getPositionKey}
+     * @return {@link WIN}, {@link DRAW} or {@link LOSS} for the player to move,
+     *         or {@link NOT_FOUND}
+     */
+    public int probe(long key){
+        int low = 0;
+        int high = size - 1;
+        while (low <= high){
+            int mid = (low + high) >>> 1;
+            long midKey = buffer.getLong(HEADER_BYTES + mid * Long.BYTES);
+            if (midKey < key){
+                low = mid + 1;
+            }
+            else if (midKey > key){
+                high = mid - 1;
+            }
+            else {
+                return (buffer.get(resultsOffset + mid / 4) >>> ((mid % 4) * 2)) & 3;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Generates a tablebase of every position reachable from the seeds with at most
+     * the given number of empty cells, solving them from the end of the game backwards.
+     * @param seeds
+     *      Positions as moves from the empty board, neither won nor full
+     * @param maxEmptyCells
+     *      The most empty cells a position in the tablebase can have
+     * @param file
+     *      The file to write the tablebase to
+     * @throws IOException if the file can't be written
+     */
+    public static void generate(List<String> seeds, int maxEmptyCells, Path file) throws IOException{
+        Map<Long, Byte> results = new HashMap<>();
+        Set<Long> walked = new HashSet<>();
+        for (String seed : seeds){
+            Gamestate gs = new BitboardGamestate();
+            gs.playMoves(seed);
+            if (gs.isWin(gs.getColours()[0]) || gs.isWin(gs.getColours()[1]) || gs.isFull()){
+                throw new IllegalArgumentException("The game is already over after " + seed);
+            }
+            long current = Solver.toBitboard(gs, gs.getColourToPlay());
+            long mask = Solver.toBitboard(gs, ' ') ^ BitboardGamestate.BOARD_MASK;
+            walk(current, mask, maxEmptyCells, results, walked);
+        }
+        write(results, maxEmptyCells, file);
+    }
+
+    /**
+     * @param moves
+     *      A position as moves from the empty board
+     * @return the key the position is stored under, found as {@link generate} finds the
+     *         seeds' keys, on a standard board where the first colour moves first
+     */
+    static long key(String moves){
+        Gamestate gs = new BitboardGamestate();
+        gs.playMoves(moves);
+        return OpeningBook.key(Solver.toBitboard(gs, gs.getColourToPlay()),
+            Solver.toBitboard(gs, ' ') ^ BitboardGamestate.BOARD_MASK);
+    }
+
+    /**
+     * Plays games in which the second colour, the hard ai, moves first against the easy ai,
+     * on both the bitboard and the char array gamestates, checking after every move that
+     * {@link Gamestate#getPositionKey} is the key the tablebase stores the position under.
+     * @param games
+     *      The number of games to play
+     * @return the number of positions whose keys differed, 0 if all were right
+     */
+    static int checkKeys(int games){
+        char[] colours = new char[] {'r', 'y'};
+        int mismatches = 0;
+        for (int game = 0; game < games; game++){
+            HardAI first = new HardAI(colours[1], colours[0]);
+            first.setSearchDepth(4);
+            first.setVerbose(false);
+            Player second = new EasyAI(colours[0], colours[1]);
+            second.setVerbose(false);
+            Gamestate[] gamestates = new Gamestate[] {new BitboardGamestate(colours), new Gamestate(colours)};
+            for (Gamestate gs : gamestates){
+                gs.setFirstColour(colours[1]);
+            }
+            StringBuilder moves = new StringBuilder();
+            Player player = first;
+            while (true){
+                int column = player.getInput(gamestates[0].copy());
+                for (Gamestate gs : gamestates){
+                    gs.placeCounter(column, player.getColour());
+                }
+                moves.append(column + 1);
+                long key = key(moves.toString());
+                for (Gamestate gs : gamestates){
+                    if (gs.getPositionKey() != key){
+                        System.out.printf("MISMATCH after %s on %s: key %d, tablebase key %d\n",
+                            moves, gs.getClass().getName(), gs.getPositionKey(), key);
+                        mismatches++;
+                    }
+                }
+                if (gamestates[0].isWin(player.getColour()) || gamestates[0].isFull()){
+                    break;
+                }
+                player = player == first ? second : first;
+            }
+        }
+        return mismatches;
+    }
+
+    /**
+     * Plays every move from a position with too many empty cells for the tablebase,
+     * until reaching the positions with few enough, which are solved.
+     */
+    private static void walk(long current, long mask, int maxEmptyCells, Map<Long, Byte> results, Set<Long> walked){
+        if (emptyCells(mask) <= maxEmptyCells){
+            solve(current, mask, results);
+            return;
+        }
+        if (!walked.add(OpeningBook.key(current, mask))){
+            return; //reached before through another order of moves
+        }
+        long possible = BitboardGamestate.playableCells(mask);
+        for (int col = 0; col < Solver.WIDTH; col++){
+            long move = possible & BitboardGamestate.columnMask(col);
+            if (move != 0 && !BitboardGamestate.isAlignment(current | move)){
+                walk(current ^ mask, mask | move, maxEmptyCells, results, walked);
+            }
+        }
+    }
+
+    /**
+     * Finds the result of a position from the results of every position it leads to,
+     * remembering the results of it and all of them.
+     * @return the result for the player to move
+     */
+    private static int solve(long current, long mask, Map<Long, Byte> results){
+        long key = OpeningBook.key(current, mask);
+        Byte known = results.get(key);
+        if (known != null){
+            return known;
+        }
+        int best = LOSS;
+        long possible = BitboardGamestate.playableCells(mask);
+        for (int col = 0; col < Solver.WIDTH; col++){
+            long move = possible & BitboardGamestate.columnMask(col);
+            if (move == 0){
+                continue;
+            }
+            int result;
+            if (BitboardGamestate.isAlignment(current | move)){
+                result = WIN;
+            }
+            else if ((mask | move) == BitboardGamestate.BOARD_MASK){
+                result = DRAW;
+            }
+            else {
+                result = WIN - solve(current ^ mask, mask | move, results); //the opponent's result, reversed
+            }
+            best = Math.max(best, result);
+        }
+        results.put(key, (byte) best);
+        return best;
+    }
+
+    private static int emptyCells(long mask){
+        return Solver.WIDTH * Solver.HEIGHT - Long.bitCount(mask);
+    }
+
+    private static void write(Map<Long, Byte> results, int maxEmptyCells, Path file) throws IOException{
+        long[] keys = new long[results.size()];
+        int i = 0;
+        for (long key : results.keySet()){
+            keys[i++] = key;
+        }
+        Arrays.sort(keys);
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + keys.length * Long.BYTES + (keys.length + 3) / 4);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(maxEmptyCells).putInt(keys.length);
+        for (long key : keys){
+            buffer.putLong(key);
+        }
+        int resultsOffset = buffer.position();
+        for (i = 0; i < keys.length; i++){
+            int index = resultsOffset + i / 4;
+            buffer.put(index, (byte) (buffer.get(index) | results.get(keys[i]) << ((i % 4) * 2)));
+        }
+        buffer.rewind();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            while (buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Generates a tablebase, args: the most empty cells, the file to write, then
+     * seed positions as moves from the empty board. Or with "check" and optionally the
+     * number of games (default 20), runs {@link checkKeys}, exiting with 1 if any key differs.
+     */
+    public static void main(String[] args) throws IOException{
+        if (args.length >= 1 && args[0].equals("check")){
+            int games = args.length >= 2 ? Integer.parseInt(args[1]) : 20;
+            int mismatches = checkKeys(games);
+            System.out.println(mismatches == 0 ? "Position keys ok over " + games + " games"
+                : mismatches + " position keys differ from the tablebase's");
+            if (mismatches != 0){
+                System.exit(1);
+            }
+            return;
+        }
+        if (args.length < 3){
+            System.out.println("Usage: Tablebase <max empty cells> <file> <seed moves>... | Tablebase check [games]");
+            return;
+        }
+        int maxEmptyCells = Integer.parseInt(args[0]);
+        Path file = Paths.get(args[1]);
+        List<String> seeds = new ArrayList<>(Arrays.asList(args).subList(2, args.length));
+        long startTime = System.nanoTime();
+        generate(seeds, maxEmptyCells, file);
+        System.out.printf("Wrote %d positions to %s in %.1f seconds\n", open(file).size(), file,
+            (System.nanoTime() - startTime) / 1e9);
+    }
+}
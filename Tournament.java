@@ -0,0 +1,372 @@
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Headless self-play tournament between two engine configurations, for tuning the ais
+ * without playing them by hand.
+ *
+ * Games are played in pairs from the same random opening, each engine taking the first
+ * move in one game of the pair, so neither gains from the openings or from moving first.
+ * Games run across a pool of threads, each game with its own gamestate, and each thread
+ * with its own players, which are reset between games.
+ *
+ * Engines are given as specs: "easy", or "hard" or "mcts" with optional comma separated
+ * settings after a colon, e.g. "hard:depth=5", "hard:time=100,threads=2,book",
+ * "mcts:playouts=20000", "mcts:time=100,threads=2".
+ *
+ * Reports wins, draws and losses of the first engine against the second, the Elo difference
+ * between them with its 95% confidence interval, and each engine's mean time per move.
+ */
+public class Tournament {
+    private static final char[] COLOURS = new char[] {'r', 'y'};
+
+    private final String specA;
+    private final String specB;
+    private final int openingMoves;
+    private final long seed;
+
+    //Each thread's players, by [engine][colour index], created on first use
+    private final ThreadLocal<Player[][]> players = new ThreadLocal<>();
+    //Every thread's players, shut down once the games are played
+    private final List<Player> created = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * @param specA
+     *      The spec of the first engine
+     * @param specB
+     *      The spec of the second engine
+     * @param openingMoves
+     *      The number of random moves to start each pair of games with
+     * @param seed
+     *      Seed for the random openings, the same seed giving the same openings
+     */
+    public Tournament(String specA, String specB, int openingMoves, long seed){
+        createPlayer(specA, COLOURS[0], COLOURS[1]).shutdown(); //fail now on bad specs rather than on every thread
+        createPlayer(specB, COLOURS[0], COLOURS[1]).shutdown();
+        this.specA = specA;
+        this.specB = specB;
+        this.openingMoves = openingMoves;
+        this.seed = seed;
+    }
+
+    /**
+     * Creates a player from an engine spec.
+     * @param spec
+     *      "easy", "hard" with optional settings depth=N, time=MS, threads=N, pvs=true|false, book
+     *      and tablebase,
+     *      or "mcts" with optional settings playouts=N, time=MS and threads=N
+     * @param colour
+     *      The colour of the player
+     * @param opColour
+     *      The colour of the opponent
+     * @return the player, which doesn't print its moves
+     */
+    static Player createPlayer(String spec, char colour, char opColour){
+        String[] parts = spec.split(":", 2);
+        Player player;
+        if (parts[0].equals("easy")){
+            player = new EasyAI(colour, opColour);
+        }
+        else if (parts[0].equals("hard")){
+            HardAI ai = new HardAI(colour, opColour);
+            String[] settings = parts.length == 2 ? parts[1].split(",") : new String[0];
+            for (String setting : settings){
+                String[] keyValue = setting.split("=", 2);
+                switch (keyValue[0]){
+                    case "depth":
+                        ai.setSearchDepth(Integer.parseInt(keyValue[1]));
+                        break;
+                    case "time":
+                        ai.setTimeBudget(Long.parseLong(keyValue[1]));
+                        break;
+                    case "threads":
+                        ai.setThreads(Integer.parseInt(keyValue[1]));
+                        break;
+                    case "pvs":
+                        ai.setPrincipalVariationSearch(Boolean.parseBoolean(keyValue[1]));
+                        break;
+                    case "book":
+                        ai.setOpeningBook(ConnectFour.loadOpeningBook(Paths.get("opening.book")));
+                        break;
+                    case "tablebase":
+                        ai.setTablebase(ConnectFour.loadTablebase(Paths.get("endgame.tablebase")));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown setting '" + setting + "' in " + spec);
+                }
+            }
+            player = ai;
+        }
+        else if (parts[0].equals("mcts")){
+            MctsAI ai = new MctsAI(colour, opColour);
+            String[] settings = parts.length == 2 ? parts[1].split(",") : new String[0];
+            for (String setting : settings){
+                String[] keyValue = setting.split("=", 2);
+                switch (keyValue[0]){
+                    case "playouts":
+                        ai.setPlayouts(Long.parseLong(keyValue[1]));
+                        break;
+                    case "time":
+                        ai.setTimeBudget(Long.parseLong(keyValue[1]));
+                        break;
+                    case "threads":
+                        ai.setThreads(Integer.parseInt(keyValue[1]));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown setting '" + setting + "' in " + spec);
+                }
+            }
+            player = ai;
+        }
+        else {
+            throw new IllegalArgumentException("Unknown engine " + spec);
+        }
+        player.setVerbose(false);
+        return player;
+    }
+
+    /**
+     * Plays the games across a pool of threads.
+     * @param pairs
+     *      The number of pairs of games to play
+     * @param threads
+     *      The number of games to play at once
+     * @return the combined results, from the first engine's point of view
+     * @throws InterruptedException if interrupted while waiting for the games
+     */
+    public Results play(int pairs, int threads) throws InterruptedException{
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Results>> tasks = new ArrayList<>();
+            for (int i = 0; i < pairs; i++){
+                long pairSeed = seed + i;
+                tasks.add(() -> playPair(pairSeed));
+            }
+            Results total = new Results();
+            for (Future<Results> future : pool.invokeAll(tasks)){
+                total.add(future.get());
+            }
+            return total;
+        }
+        catch (ExecutionException e){
+            throw new IllegalStateException(e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+            synchronized (created){
+                for (Player player : created){
+                    player.shutdown();
+                }
+                created.clear();
+            }
+        }
+    }
+
+    /**
+     * Plays a random opening twice, each engine moving first once.
+     */
+    private Results playPair(long pairSeed){
+        Player[][] own = players.get();
+        if (own == null){
+            own = new Player[][] {
+                {createPlayer(specA, COLOURS[0], COLOURS[1]), createPlayer(specA, COLOURS[1], COLOURS[0])},
+                {createPlayer(specB, COLOURS[0], COLOURS[1]), createPlayer(specB, COLOURS[1], COLOURS[0])}
+            };
+            players.set(own);
+            for (Player[] engine : own){
+                created.addAll(Arrays.asList(engine));
+            }
+        }
+        String opening = randomOpening(new Random(pairSeed));
+        Results results = new Results();
+        playGame(opening, own[0][0], own[1][1], true, results);
+        playGame(opening, own[1][0], own[0][1], false, results);
+        return results;
+    }
+
+    /**
+     * @return moves from the empty board which neither win nor fill the board
+     */
+    private String randomOpening(Random random){
+        Gamestate gs = new BitboardGamestate(COLOURS);
+        StringBuilder moves = new StringBuilder();
+        while (moves.length() < openingMoves){
+            List<Integer> columns = gs.getPossibleColumns();
+            int column = columns.get(random.nextInt(columns.size()));
+            char colour = gs.getColourToPlay();
+            gs.placeCounter(column, colour);
+            if (gs.isWin(colour) || gs.isFull()){
+                gs.unplaceCounter(column);
+                continue; //try another move, every position has one which doesn't win
+            }
+            moves.append(column + 1);
+        }
+        return moves.toString();
+    }
+
+    /**
+     * Plays a game from the opening to the end, adding its result.
+     * @param opening
+     *      The moves to start from
+     * @param first
+     *      The player with the first colour, who moves first from the empty board
+     * @param second
+     *      The player with the second colour
+     * @param aIsFirst
+     *      Whether the first engine is playing the first colour
+     * @param results
+     *      The results to add to
+     */
+    private void playGame(String opening, Player first, Player second, boolean aIsFirst, Results results){
+        first.reset();
+        second.reset();
+        Gamestate gs = new BitboardGamestate(COLOURS);
+        gs.playMoves(opening);
+        while (true){
+            char colour = gs.getColourToPlay();
+            Player player = colour == first.getColour() ? first : second;
+            boolean isA = (player == first) == aIsFirst;
+
+            long startTime = System.nanoTime();
+            int move = player.getInput(gs);
+            long time = System.nanoTime() - startTime;
+            if (isA){
+                results.movesA++;
+                results.timeA += time;
+            }
+            else {
+                results.movesB++;
+                results.timeB += time;
+            }
+
+            gs.placeCounter(move, colour);
+            if (gs.isWin(colour)){
+                if (isA){
+                    results.wins++;
+                }
+                else {
+                    results.losses++;
+                }
+                return;
+            }
+            if (gs.isFull()){
+                results.draws++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Results of games, from the first engine's point of view.
+     */
+    public static class Results {
+        int wins;
+        int draws;
+        int losses;
+        long movesA;
+        long timeA; //nanoseconds
+        long movesB;
+        long timeB;
+
+        void add(Results other){
+            wins += other.wins;
+            draws += other.draws;
+            losses += other.losses;
+            movesA += other.movesA;
+            timeA += other.timeA;
+            movesB += other.movesB;
+            timeB += other.timeB;
+        }
+
+        public int getGames(){
+            return wins + draws + losses;
+        }
+
+        /**
+         * @return the first engine's score, 1 for a win and 0.5 for a draw, per game
+         */
+        public double getScore(){
+            return (wins + draws / 2.0) / getGames();
+        }
+
+        /**
+         * @return the Elo difference of the first engine over the second
+         */
+        public double getElo(){
+            return elo(getScore());
+        }
+
+        /**
+         * @return the half width of the 95% confidence interval of the Elo difference,
+         *         found from the standard deviation of the per game scores
+         */
+        public double getEloError(){
+            int games = getGames();
+            double score = getScore();
+            double variance = (wins * Math.pow(1 - score, 2) + draws * Math.pow(0.5 - score, 2)
+                + losses * Math.pow(score, 2)) / games;
+            double scoreError = 1.96 * Math.sqrt(variance / games);
+            return (elo(Math.min(score + scoreError, 1)) - elo(Math.max(score - scoreError, 0))) / 2;
+        }
+
+        /**
+         * @return the Elo difference which gives the expected score, infinite for 0 or 1
+         */
+        private static double elo(double score){
+            return -400 * Math.log10(1 / score - 1);
+        }
+
+        public double getMeanMoveMillisA(){
+            return movesA == 0 ? 0 : timeA / 1e6 / movesA;
+        }
+
+        public double getMeanMoveMillisB(){
+            return movesB == 0 ? 0 : timeB / 1e6 / movesB;
+        }
+    }
+
+    /**
+     * Runs a tournament, args: engine spec A, engine spec B, optionally the number of
+     * pairs of games (default 50), threads (default one per core), random opening
+     * moves (default 4) and seed (default 1).
+     */
+    public static void main(String[] args) throws InterruptedException{
+        if (args.length < 2){
+            System.out.println("Usage: Tournament <engine A> <engine B> [pairs] [threads] [opening moves] [seed]");
+            System.out.println("Engines: easy, hard, hard:depth=N,time=MS,threads=N,pvs=true|false,book,tablebase,");
+            System.out.println("         mcts, mcts:playouts=N,time=MS,threads=N");
+            return;
+        }
+        int pairs = args.length >= 3 ? Integer.parseInt(args[2]) : 50;
+        int threads = args.length >= 4 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        int openingMoves = args.length >= 5 ? Integer.parseInt(args[4]) : 4;
+        long seed = args.length >= 6 ? Long.parseLong(args[5]) : 1;
+
+        Tournament tournament = new Tournament(args[0], args[1], openingMoves, seed);
+        long startTime = System.nanoTime();
+        Results results = tournament.play(pairs, threads);
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        System.out.printf("%s vs %s, %d games on %d threads\n", args[0], args[1], results.getGames(), threads);
+        System.out.printf("Wins %d, draws %d, losses %d, score %.1f%%\n",
+            results.wins, results.draws, results.losses, results.getScore() * 100);
+        if (Double.isInfinite(results.getElo())){
+            System.out.println("Elo difference unbounded, one engine scored every point");
+        }
+        else {
+            System.out.printf("Elo difference %.1f +/- %.1f\n", results.getElo(), results.getEloError());
+        }
+        System.out.printf("Mean time per move: %s %.2fms, %s %.2fms\n",
+            args[0], results.getMeanMoveMillisA(), args[1], results.getMeanMoveMillisB());
+        System.out.printf("%.1f seconds, %.2f games/s\n", seconds, results.getGames() / seconds);
+    }
+}
@@ -0,0 +1,250 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Fixed size transposition table for the hard ai, remembering the results of
+ * previously searched gamestates so they aren't searched again when reached
+ * through a different order of moves.
+ *
+ * Entries are kept in two primitive arrays rather than as objects, one holding
+ * the Zobrist hash and the other the packed entry:
+ * score (32 bits), depth (8 bits, deeper searches kept as 255), bound type (2 bits), best column + 1 (5 bits,
+ * enough for the widest board), generation (8 bits) and a valid bit.
+ *
+ * Replacement policy: an entry is overwritten if it is for the same gamestate,
+ * is left over from an earlier search (older generation) or was searched to a
+ * depth no greater than the new one.
+ *
+ * The table can be shared between search threads without locking. The key is
+ * stored xored with the entry, so if two threads write the same slot at once
+ * and the key and entry end up from different writes, the check on probing fails
+ * and it is treated as a miss rather than returning another gamestate's entry.
+ *
+ * The table can be saved to a snapshot file and loaded again, so a new process starts
+ * with what earlier ones searched. The file is a 32 byte header (magic, version,
+ * {@link Evaluator#VERSION}, board width, height and connect length, the colour the
+ * scores are for, number of entries), then the hash and entry of each filled slot.
+ * A snapshot of another evaluation, board or colour is discarded on loading, as its
+ * scores would be wrong.
+ */
+public class TranspositionTable {
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1; //the score is at least the stored score
+    public static final int UPPER_BOUND = 2; //the score is at most the stored score
+
+    /** Returned by {@link probe} when the gamestate has no entry */
+    public static final long MISS = 0L;
+
+    private static final long VALID_BIT = 1L << 62;
+    static final int MAX_DEPTH = 0xFF; //the most the depth field holds
+
+    static final int MAGIC = 0x43345454; //"C4TT"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    private static final int CHUNK_ENTRIES = 4096; //entries written or read at a time
+
+    private final long[] keys;
+    private final long[] entries;
+    private final int indexMask;
+    private int generation;
+
+    /**
+     * @param sizeBits
+     *      log2 of the number of entries, each entry taking 16 bytes
+     */
+    public TranspositionTable(int sizeBits){
+        keys = new long[1 << sizeBits];
+        entries = new long[1 << sizeBits];
+        indexMask = (1 << sizeBits) - 1;
+    }
+
+    /**
+     * Marks the start of a new search, so entries from previous searches
+     * are the first to be replaced.
+     */
+    public void nextGeneration(){
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /**
+     * @param hash
+     *      The Zobrist hash of the gamestate to look up
+     * @return the packed entry for the gamestate, or {@link MISS} if there is none
+     */
+    public long probe(long hash){
+        int index = (int) hash & indexMask;
+        long entry = entries[index];
+        if (entry != MISS && (keys[index] ^ entry) == hash){
+            return entry;
+        }
+        return MISS;
+    }
+
+    /**
+     * Stores the result of a search, if the replacement policy allows it.
+     * @param hash
+     *      The Zobrist hash of the searched gamestate
+     * @param score
+     *      The score found for the gamestate
+     * @param depth
+     *      The depth the gamestate was searched to, stored as at most {@link MAX_DEPTH}
+     * @param bound
+     *      One of {@link EXACT}, {@link LOWER_BOUND} or {@link UPPER_BOUND}
+     * @param column
+     *      The best column found, or -1 if there is none
+     */
+    public void store(long hash, int score, int depth, int bound, int column){
+        depth = Math.min(depth, MAX_DEPTH); //a shallower depth only makes the entry less used
+        int index = (int) hash & indexMask;
+        long old = entries[index];
+        if (old != MISS && (keys[index] ^ old) != hash
+                && generation(old) == generation && depth(old) > depth){
+            return;
+        }
+        long entry = (score & 0xFFFFFFFFL)
+            | ((long) depth << 32)
+            | ((long) bound << 40)
+            | ((long) (column + 1) << 42)
+            | ((long) generation << 47)
+            | VALID_BIT;
+        keys[index] = hash ^ entry;
+        entries[index] = entry;
+    }
+
+    /**
+     * Writes every filled slot to a snapshot file, see {@link load}.
+     * Not to be called while the table is being searched.
+     * @param file
+     *      The file to write
+     * @param width
+     *      The number of columns of the board the entries are for
+     * @param height
+     *      The number of rows of the board the entries are for
+     * @param connect
+     *      The number in a row to win on the board the entries are for
+     * @param colour
+     *      The colour of the ai the scores are for
+     * @return the number of entries written
+     * @throws IOException if the file can't be written
+     */
+    public int save(Path file, int width, int height, int connect, char colour) throws IOException{
+        int count = 0;
+        for (long entry : entries){
+            if (entry != MISS){
+                count++;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_ENTRIES * 2 * Long.BYTES);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(Evaluator.VERSION)
+            .putInt(width).putInt(height).putInt(connect).putInt(colour).putInt(count);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            for (int index = 0; index < entries.length; index++){
+                long entry = entries[index];
+                if (entry == MISS){
+                    continue;
+                }
+                if (buffer.remaining() < 2 * Long.BYTES){
+                    write(channel, buffer);
+                }
+                buffer.putLong(keys[index] ^ entry).putLong(entry);
+            }
+            write(channel, buffer);
+        }
+        return count;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException{
+        buffer.flip();
+        while (buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Stores every entry of a snapshot written by {@link save}, as of the current
+     * search, so the next search replaces them first. The snapshot can be of a
+     * table of another size. Not to be called while the table is being searched.
+     * @param file
+     *      The snapshot file, memory mapped
+     * @param width
+     *      The number of columns of the board to be searched
+     * @param height
+     *      The number of rows of the board to be searched
+     * @param connect
+     *      The number in a row to win on the board to be searched
+     * @param colour
+     *      The colour of the ai searching
+     * @return the number of entries loaded, 0 if the snapshot is of another evaluation,
+     *         board or colour, so discarded
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if the file isn't a snapshot of this version, or
+     *         isn't the size its number of entries makes it
+     */
+    public int load(Path file, int width, int height, int connect, char colour) throws IOException{
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION){
+            throw new IllegalArgumentException("Not a transposition table snapshot, or one of a different version");
+        }
+        int count = buffer.getInt(28);
+        if (count < 0 || buffer.capacity() != HEADER_BYTES + (long) count * 2 * Long.BYTES){
+            throw new IllegalArgumentException("Transposition table snapshot cut short or corrupt");
+        }
+        if (buffer.getInt(8) != Evaluator.VERSION || buffer.getInt(12) != width || buffer.getInt(16) != height
+                || buffer.getInt(20) != connect || buffer.getInt(24) != colour){
+            return 0;
+        }
+        LongBuffer stored = buffer.position(HEADER_BYTES).asLongBuffer();
+        long[] chunk = new long[CHUNK_ENTRIES * 2];
+        for (int loaded = 0; loaded < count; loaded += CHUNK_ENTRIES){
+            int length = Math.min(CHUNK_ENTRIES, count - loaded) * 2;
+            stored.get(chunk, 0, length);
+            for (int i = 0; i < length; i += 2){
+                long entry = chunk[i + 1];
+                store(chunk[i], score(entry), depth(entry), bound(entry), column(entry));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Empties the table.
+     */
+    public void clear(){
+        Arrays.fill(keys, 0L);
+        Arrays.fill(entries, MISS);
+    }
+
+    public static int score(long entry){
+        return (int) entry;
+    }
+
+    public static int depth(long entry){
+        return (int) (entry >>> 32) & 0xFF;
+    }
+
+    public static int bound(long entry){
+        return (int) (entry >>> 40) & 0x3;
+    }
+
+    /**
+     * @return the best column stored in the entry, or -1 if there is none
+     */
+    public static int column(long entry){
+        return ((int) (entry >>> 42) & 0x1F) - 1;
+    }
+
+    private static int generation(long entry){
+        return (int) (entry >>> 47) & 0xFF;
+    }
+}